@@ -0,0 +1,411 @@
+package com.migration.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @description A local stand-in for the parts of the Box API the migration uses: folder info, paged folder items,
+ *              folder/file copy and file delete. Latency, the largest page it will return, the rate of injected
+ *              429/500 errors and a per-user request quota are configurable so benchmarks can run repeatably on a
+ *              machine with no network. Users are told apart by their bearer token, the way Box keys its quota by user.
+ *              Point a connection at it with api.setBaseURL(server.getBaseUrl()).
+ */
+public class FakeBoxServer {
+
+    // The SDK puts a trailing slash on some paths (e.g. "folders/{id}/items/"), so every pattern allows one.
+    private static final Pattern FOLDER_ITEMS = Pattern.compile("^/2\\.0/folders/(\\w+)/items/?$");
+    private static final Pattern FOLDER_INFO = Pattern.compile("^/2\\.0/folders/(\\w+)/?$");
+    private static final Pattern ITEM_COPY = Pattern.compile("^/2\\.0/(folders|files)/(\\w+)/copy/?$");
+    private static final Pattern FILE = Pattern.compile("^/2\\.0/files/(\\w+)/?$");
+    private static final Pattern PARENT_ID = Pattern.compile("\"parent\"\\s*:\\s*\\{\\s*\"id\"\\s*:\\s*\"(\\w+)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Item> itemsById = new ConcurrentHashMap<String, Item>();
+    private final AtomicLong nextId = new AtomicLong(100000000000L);
+    private final AtomicLong requestCount = new AtomicLong();
+    // System.nanoTime() of the first copy request since the last reset, or 0 before it arrives.
+    private final AtomicLong firstCopyNanos = new AtomicLong();
+    private final Map<String, UserQuota> quotasByToken = new ConcurrentHashMap<String, UserQuota>();
+
+    private volatile long latencyMillis = 0;
+    private volatile int maxPageSize = 1000;
+    private volatile double throttleRate = 0;
+    private volatile double serverErrorRate = 0;
+    private volatile double requestsPerSecondPerUser = 0;
+
+    public FakeBoxServer() throws IOException {
+        // The server writes a response's headers and body separately. Without TCP_NODELAY the body waits on the
+        // client's delayed ACK, which adds about 40 ms to every request. Read when the first server is created.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/2.0/", this::handle);
+        server.setExecutor(executor);
+        itemsById.put("0", new Item("0", "All Files", Item.FOLDER, null, 0, null));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        // The cached pool's idle threads would otherwise keep a forked JVM alive for their 60 second keep-alive.
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/2.0/";
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * @description Answer this fraction of requests with a 429 and a Retry-After of 1 second.
+     */
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * @description Answer this fraction of requests with a 500.
+     */
+    public void setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    /**
+     * @description Answer with a 429 once a user (bearer token) goes over this many requests per second. 0 turns it off.
+     */
+    public void setRequestsPerSecondPerUser(double requestsPerSecondPerUser) {
+        this.requestsPerSecondPerUser = requestsPerSecondPerUser;
+        quotasByToken.clear();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return The System.nanoTime() of the first copy request since resetFirstCopy, or 0 if none has arrived.
+     */
+    public long getFirstCopyNanos() {
+        return firstCopyNanos.get();
+    }
+
+    public void resetFirstCopy() {
+        firstCopyNanos.set(0);
+    }
+
+    public String createFolder(String parentId, String name) {
+        return create(parentId, name, Item.FOLDER, 0, null);
+    }
+
+    public String createFile(String parentId, String name, long size, String sha1) {
+        return create(parentId, name, Item.FILE, size, sha1);
+    }
+
+    /**
+     * @description Remove everything inside a folder, e.g. to reset a copy destination between benchmark iterations.
+     */
+    public void clearFolder(String folderId) {
+        Item folder = itemsById.get(folderId);
+        List<String> childIds;
+        synchronized (folder) {
+            childIds = new ArrayList<String>(folder.ChildIds);
+            folder.ChildIds.clear();
+        }
+        for (String childId : childIds) {
+            clearFolderIfPresent(childId);
+            itemsById.remove(childId);
+        }
+    }
+
+    private void clearFolderIfPresent(String itemId) {
+        Item item = itemsById.get(itemId);
+        if (item != null && item.isFolder()) {
+            clearFolder(itemId);
+        }
+    }
+
+    private String create(String parentId, String name, String type, long size, String sha1) {
+        String id = String.valueOf(nextId.getAndIncrement());
+        Item item = new Item(id, name, type, parentId, size, sha1);
+        itemsById.put(id, item);
+
+        Item parent = itemsById.get(parentId);
+        synchronized (parent) {
+            parent.ChildIds.add(id);
+        }
+        return id;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            double userRate = requestsPerSecondPerUser;
+            if (userRate > 0) {
+                String token = String.valueOf(exchange.getRequestHeaders().getFirst("Authorization"));
+                if (!quotasByToken.computeIfAbsent(token, key -> new UserQuota(userRate)).tryAcquire()) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    send(exchange, 429, "{\"type\":\"error\",\"status\":429,\"code\":\"rate_limit_exceeded\"}");
+                    return;
+                }
+            }
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < throttleRate) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, "{\"type\":\"error\",\"status\":429,\"code\":\"rate_limit_exceeded\"}");
+                return;
+            }
+            if (roll < throttleRate + serverErrorRate) {
+                send(exchange, 500, "{\"type\":\"error\",\"status\":500,\"code\":\"internal_server_error\"}");
+                return;
+            }
+
+            route(exchange);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "{}");
+        } catch (RuntimeException ex) {
+            send(exchange, 500, "{\"type\":\"error\",\"status\":500,\"message\":\"" + escape(String.valueOf(ex.getMessage())) + "\"}");
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Matcher matcher;
+
+        if ("GET".equals(method) && (matcher = FOLDER_ITEMS.matcher(path)).matches()) {
+            listItems(exchange, matcher.group(1));
+        } else if ("GET".equals(method) && (matcher = FOLDER_INFO.matcher(path)).matches()) {
+            Item folder = itemsById.get(matcher.group(1));
+            if (folder == null) {
+                send(exchange, 404, "{\"type\":\"error\",\"status\":404,\"code\":\"not_found\"}");
+            } else {
+                send(exchange, 200, toJson(folder));
+            }
+        } else if ("POST".equals(method) && (matcher = ITEM_COPY.matcher(path)).matches()) {
+            copy(exchange, matcher.group(2));
+        } else if ("DELETE".equals(method) && (matcher = FILE.matcher(path)).matches()) {
+            Item file = itemsById.remove(matcher.group(1));
+            if (file != null) {
+                Item parent = itemsById.get(file.ParentId);
+                synchronized (parent) {
+                    parent.ChildIds.remove(file.Id);
+                }
+            }
+            send(exchange, 204, null);
+        } else {
+            send(exchange, 404, "{\"type\":\"error\",\"status\":404,\"code\":\"not_found\"}");
+        }
+    }
+
+    private void listItems(HttpExchange exchange, String folderId) throws IOException {
+        Item folder = itemsById.get(folderId);
+        if (folder == null) {
+            send(exchange, 404, "{\"type\":\"error\",\"status\":404,\"code\":\"not_found\"}");
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI());
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Math.min(maxPageSize, Integer.parseInt(query.getOrDefault("limit", "100")));
+
+        List<String> childIds;
+        synchronized (folder) {
+            childIds = new ArrayList<String>(folder.ChildIds);
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"total_count\":").append(childIds.size())
+                .append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit)
+                .append(",\"entries\":[");
+        for (int i = offset; i < Math.min(childIds.size(), offset + limit); i++) {
+            if (i > offset) {
+                json.append(',');
+            }
+            json.append(toJson(itemsById.get(childIds.get(i))));
+        }
+        json.append("]}");
+
+        send(exchange, 200, json.toString());
+    }
+
+    private void copy(HttpExchange exchange, String itemId) throws IOException {
+        firstCopyNanos.compareAndSet(0, System.nanoTime());
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        Matcher parentMatcher = PARENT_ID.matcher(body);
+        Item item = itemsById.get(itemId);
+        if (item == null || !parentMatcher.find() || !itemsById.containsKey(parentMatcher.group(1))) {
+            send(exchange, 404, "{\"type\":\"error\",\"status\":404,\"code\":\"not_found\"}");
+            return;
+        }
+
+        String parentId = parentMatcher.group(1);
+        Item parent = itemsById.get(parentId);
+        synchronized (parent) {
+            for (String childId : parent.ChildIds) {
+                if (item.Name.equals(itemsById.get(childId).Name)) {
+                    send(exchange, 409, "{\"type\":\"error\",\"status\":409,\"code\":\"item_name_in_use\"}");
+                    return;
+                }
+            }
+        }
+
+        String copyId = copyTree(item, parentId);
+        send(exchange, 201, toJson(itemsById.get(copyId)));
+    }
+
+    private String copyTree(Item item, String parentId) {
+        String copyId = create(parentId, item.Name, item.Type, item.Size, item.Sha1);
+
+        List<String> childIds;
+        synchronized (item) {
+            childIds = new ArrayList<String>(item.ChildIds);
+        }
+        for (String childId : childIds) {
+            copyTree(itemsById.get(childId), copyId);
+        }
+        return copyId;
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<String, String>();
+        if (uri.getRawQuery() == null) {
+            return query;
+        }
+
+        for (String pair : uri.getRawQuery().split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String toJson(Item item) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"").append(item.Type)
+                .append("\",\"id\":\"").append(item.Id)
+                .append("\",\"etag\":\"0\",\"name\":\"").append(escape(item.Name))
+                .append("\",\"size\":").append(item.Size);
+        if (item.Sha1 != null) {
+            json.append(",\"sha1\":\"").append(item.Sha1).append('"');
+        }
+        json.append(",\"modified_at\":\"2020-01-01T00:00:00-00:00\"}");
+        return json.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static class Item {
+
+        static final String FOLDER = "folder";
+        static final String FILE = "file";
+
+        Item(String id, String name, String type, String parentId, long size, String sha1) {
+            Id = id;
+            Name = name;
+            Type = type;
+            ParentId = parentId;
+            Size = size;
+            Sha1 = sha1;
+        }
+
+        final String Id;
+        final String Name;
+        final String Type;
+        final String ParentId;
+        final long Size;
+        final String Sha1;
+        final List<String> ChildIds = new ArrayList<String>();
+
+        boolean isFolder() {
+            return FOLDER.equals(Type);
+        }
+    }
+
+    /**
+     * @description A token bucket holding one second of requests for a single user.
+     */
+    private static class UserQuota {
+
+        private final double requestsPerSecond;
+        private double availableRequests;
+        private long lastRefillNanos = System.nanoTime();
+
+        UserQuota(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.availableRequests = requestsPerSecond;
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            availableRequests = Math.min(requestsPerSecond, availableRequests + (now - lastRefillNanos) / 1e9 * requestsPerSecond);
+            lastRefillNanos = now;
+
+            if (availableRequests < 1.0) {
+                return false;
+            }
+            availableRequests -= 1.0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.migration.bench;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+import com.migration.FolderNameIndex;
+import com.migration.FolderNameMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description JMH benchmarks for FolderNameMatcher over a FolderNameIndex of generated account names, the way the
+ *              migration matches origin folders to accounts. Building the matcher, up to its first lookup that isn't an
+ *              exact match, is timed once per iteration. Lookups are timed one name at a time, cycling through names
+ *              that are spelled exactly like an account, that only match once normalized ("ACME WIDGETS, INC" for
+ *              "Acme Widgets Inc.") and that have one or two typos. How many of the typo lookups find the right account
+ *              is printed at the end of each trial, e.g.
+ *              java -jar bench/target/benchmarks.jar FolderNameMatcherBenchmarks -p names=1000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FolderNameMatcherBenchmarks {
+
+    private static final int LOOKUP_NAME_COUNT = 10000;
+    private static final int VOCABULARY_SIZE = 20000;
+    private static final String[] SYLLABLES = {
+            "ba", "ca", "da", "fa", "ga", "ha", "ka", "la", "ma", "na", "pa", "ra", "sa", "ta", "va", "be", "de", "fe",
+            "le", "me", "ne", "pe", "re", "se", "te", "bi", "di", "fi", "li", "mi", "ni", "ri", "si", "ti", "bo", "co",
+            "do", "lo", "mo", "no", "ro", "so", "to", "bu", "du", "lu", "mu", "nu", "ar", "en", "or", "el", "an", "st",
+            "tr", "br", "ch", "sh", "th"};
+    private static final String[] COMMON_WORDS = {
+            "University", "College", "School", "Group", "Holdings", "Partners", "Foundation", "Medical", "of", "and"};
+    private static final String[] SUFFIXES = {"", "", "", " Inc.", " LLC", " Ltd", " Corp"};
+
+    @Param("100000")
+    public int names;
+
+    private FolderNameIndex index;
+    private FolderNameMatcher<BoxFolder> matcher;
+    private String[] accountNames;
+    private String[] exactNames;
+    private String[] normalizedNames;
+    private String[] oneTypoNames;
+    private String[] twoTypoNames;
+    private int next;
+    private PrintStream standardOut;
+
+    @Setup(Level.Trial)
+    public void buildIndex() {
+        // The matcher reports every ambiguous name. Thousands of lookups a second would bury JMH's own output.
+        standardOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Random random = new Random(42);
+        accountNames = generateAccountNames(names, random);
+        FolderNameIndex.Builder builder = new FolderNameIndex.Builder();
+        for (int i = 0; i < accountNames.length; i++) {
+            builder.add(accountNames[i], String.valueOf(100000000000L + i));
+        }
+        index = builder.build(new BoxAPIConnection("benchmark-token"));
+        matcher = new FolderNameMatcher<BoxFolder>(index);
+
+        exactNames = new String[LOOKUP_NAME_COUNT];
+        normalizedNames = new String[LOOKUP_NAME_COUNT];
+        oneTypoNames = new String[LOOKUP_NAME_COUNT];
+        twoTypoNames = new String[LOOKUP_NAME_COUNT];
+        for (int i = 0; i < LOOKUP_NAME_COUNT; i++) {
+            String accountName = accountNames[i * (names / LOOKUP_NAME_COUNT)];
+            exactNames[i] = accountName;
+            normalizedNames[i] = accountName.toUpperCase(Locale.ROOT).replace(".", "").replace(" ", ", ");
+            oneTypoNames[i] = addTypos(accountName, 1, random);
+            twoTypoNames[i] = addTypos(accountName, 2, random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportTypoMatches() {
+        int oneTypoMatches = 0;
+        int twoTypoMatches = 0;
+        for (int i = 0; i < LOOKUP_NAME_COUNT; i++) {
+            String accountName = accountNames[i * (names / LOOKUP_NAME_COUNT)];
+            oneTypoMatches += isMatch(matcher.match(oneTypoNames[i]), accountName) ? 1 : 0;
+            twoTypoMatches += isMatch(matcher.match(twoTypoNames[i]), accountName) ? 1 : 0;
+        }
+
+        System.setOut(standardOut);
+        System.out.printf("%nRight account found for %.1f%% of names with one typo and %.1f%% with two.%n",
+                100.0 * oneTypoMatches / LOOKUP_NAME_COUNT, 100.0 * twoTypoMatches / LOOKUP_NAME_COUNT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public FolderNameMatcher.Match<BoxFolder> build() {
+        // The matcher only indexes the names once a lookup misses an exact one.
+        return new FolderNameMatcher<BoxFolder>(index).match(normalizedNames[0]);
+    }
+
+    @Benchmark
+    public FolderNameMatcher.Match<BoxFolder> matchExact() {
+        return matcher.match(exactNames[nextLookup()]);
+    }
+
+    @Benchmark
+    public FolderNameMatcher.Match<BoxFolder> matchNormalized() {
+        return matcher.match(normalizedNames[nextLookup()]);
+    }
+
+    @Benchmark
+    public FolderNameMatcher.Match<BoxFolder> matchOneTypo() {
+        return matcher.match(oneTypoNames[nextLookup()]);
+    }
+
+    @Benchmark
+    public FolderNameMatcher.Match<BoxFolder> matchTwoTypos() {
+        return matcher.match(twoTypoNames[nextLookup()]);
+    }
+
+    private int nextLookup() {
+        next = next + 1 == LOOKUP_NAME_COUNT ? 0 : next + 1;
+        return next;
+    }
+
+    private static boolean isMatch(FolderNameMatcher.Match<BoxFolder> match, String accountName) {
+        return match != null && match.MatchedName.equals(accountName);
+    }
+
+    /**
+     * @description Names of two to four made-up words, some of them common ones like "University", with an occasional
+     *              company suffix.
+     */
+    private static String[] generateAccountNames(int count, Random random) {
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int syllable = 2 + random.nextInt(3); syllable > 0; syllable--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            vocabulary[i] = word.toString();
+        }
+
+        Set<String> accountNames = new LinkedHashSet<String>();
+        while (accountNames.size() < count) {
+            StringBuilder name = new StringBuilder(vocabulary[random.nextInt(vocabulary.length)]);
+            for (int word = 1 + random.nextInt(3); word > 0; word--) {
+                name.append(' ').append(random.nextInt(3) == 0
+                        ? COMMON_WORDS[random.nextInt(COMMON_WORDS.length)]
+                        : vocabulary[random.nextInt(vocabulary.length)]);
+            }
+            accountNames.add(name.append(SUFFIXES[random.nextInt(SUFFIXES.length)]).toString());
+        }
+        return accountNames.toArray(new String[0]);
+    }
+
+    /**
+     * @description Replace, drop, add or swap a random letter, as many times as asked.
+     */
+    private static String addTypos(String name, int typoCount, Random random) {
+        StringBuilder typoed = new StringBuilder(name);
+        for (int typo = 0; typo < typoCount; typo++) {
+            int position = random.nextInt(typoed.length() - 1);
+            char letter = (char)('a' + random.nextInt(26));
+            switch (random.nextInt(4)) {
+                case 0:
+                    typoed.setCharAt(position, letter);
+                    break;
+                case 1:
+                    typoed.deleteCharAt(position);
+                    break;
+                case 2:
+                    typoed.insert(position, letter);
+                    break;
+                default:
+                    char swapped = typoed.charAt(position);
+                    typoed.setCharAt(position, typoed.charAt(position + 1));
+                    typoed.setCharAt(position + 1, swapped);
+                    break;
+            }
+        }
+        return typoed.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package com.migration.bench;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+import com.migration.ApiRateLimiter;
+import com.migration.BoxApiService;
+import com.migration.BoxConnectionPool;
+import com.migration.FolderNameMatcher;
+import com.migration.MigrationEngine;
+import com.migration.MigrationLogWriter;
+import com.migration.OriginFolderSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * @description Runs a whole migration of one very large directory the way Main does: the accounts directory is indexed
+ *              by name, then OriginFolderSource pages through the directory of folders to migrate and MigrationEngine
+ *              copies each one's subfolder into its account, all against FakeBoxServer. Besides the total time, each
+ *              iteration prints how long it took until the first copy reached the server and the peak heap usage, e.g.
+ *              java -jar bench/target/benchmarks.jar LargeDirectoryBenchmarks -p folders=1000000 -p latencyMillis=5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LargeDirectoryBenchmarks {
+
+    private static final String[] LOG_COLUMNS = new String[] {"Origin Folder Name", "Origin Folder ID", "Destination Folder Name",
+            "Destination Folder ID", "Migrated Folder Name", "Migrated Folder ID", "Number of Files", "Status", "Details",
+            "Verification", "Match Confidence"};
+
+    // Folders in the directory to migrate, and as many accounts to match them to.
+    @Param("100000")
+    public int folders;
+
+    @Param("0")
+    public long latencyMillis;
+
+    private FakeBoxServer server;
+    private BoxAPIConnection api;
+    private String accountsDirectoryId;
+    private String originDirectoryId;
+    private String[] accountIds;
+    private File logFile;
+    private PrintStream standardOut;
+
+    private long startNanos;
+    private long baselineHeapBytes;
+    private int processed;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        Logger.getLogger("com.box.sdk").setLevel(java.util.logging.Level.OFF);
+
+        server = new FakeBoxServer();
+        server.setLatencyMillis(latencyMillis);
+        server.start();
+
+        api = new BoxAPIConnection("benchmark-token");
+        api.setBaseURL(server.getBaseUrl());
+        api.setMaxRetryAttempts(0);
+        BoxApiService.setAPI(api);
+        // Measure the migration, not the default 15 calls/s limiter.
+        BoxApiService.setConnectionPool(new BoxConnectionPool(List.of(
+                new BoxConnectionPool.Identity("benchmark", api, new ApiRateLimiter(1e6, 1e6)))));
+
+        accountsDirectoryId = server.createFolder("0", "Accounts");
+        originDirectoryId = server.createFolder("0", "Files To Migrate");
+        accountIds = new String[folders];
+        for (int i = 0; i < folders; i++) {
+            accountIds[i] = server.createFolder(accountsDirectoryId, "Account " + i);
+            server.createFolder(server.createFolder(originDirectoryId, "Account " + i), "Documents");
+        }
+
+        logFile = File.createTempFile("large-directory-benchmark", ".csv");
+        // Every migrator prints the folder it's migrating, which would bury JMH's own output.
+        standardOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        System.setOut(standardOut);
+        server.stop();
+        logFile.delete();
+    }
+
+    /**
+     * @description Empty the accounts again so every iteration copies every folder, and take the heap in use before
+     *              the run (mostly the fake server's folders) so the report can tell it apart from the migration's.
+     */
+    @Setup(Level.Iteration)
+    public void clearAccounts() {
+        for (String accountId : accountIds) {
+            server.clearFolder(accountId);
+            BoxApiService.getListingCache().invalidate(accountId);
+        }
+        server.resetFirstCopy();
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        baselineHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @description MigrationEngine.run resets the heap pools' peaks when it starts, so the peak is the engine's run, with
+     *              the destination index already built and held.
+     */
+    @TearDown(Level.Iteration)
+    public void reportFirstCopyAndHeap() {
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        String timeToFirstCopy = server.getFirstCopyNanos() == 0 ? "no copies"
+                : (server.getFirstCopyNanos() - startNanos) / 1000000 + " ms";
+        standardOut.println();
+        standardOut.println("Migrated " + processed + " folders. Time to first copy: " + timeToFirstCopy + ". Peak heap: "
+                + peakHeapBytes / (1024 * 1024) + " MB, " + baselineHeapBytes / (1024 * 1024) + " MB of it in use before the run.");
+    }
+
+    @Benchmark
+    public int migrateDirectory() throws IOException {
+        startNanos = System.nanoTime();
+        FolderNameMatcher<BoxFolder> destinationMatcher = new FolderNameMatcher<BoxFolder>(BoxApiService.getChildFolderIndex(accountsDirectoryId));
+        OriginFolderSource originFolders = new OriginFolderSource(api, originDirectoryId, destinationMatcher, null);
+
+        try (MigrationLogWriter logWriter = new MigrationLogWriter(logFile, LOG_COLUMNS, MigrationLogWriter.Durability.BUFFERED,
+                MigrationLogWriter.DEFAULT_ROWS_PER_FLUSH, MigrationLogWriter.DEFAULT_FLUSH_INTERVAL_MILLIS)) {
+            processed = new MigrationEngine().run(originFolders, logWriter);
+        }
+        return processed;
+    }
+}
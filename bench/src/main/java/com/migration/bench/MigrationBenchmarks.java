@@ -0,0 +1,221 @@
+package com.migration.bench;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+import com.migration.ApiRateLimiter;
+import com.migration.BoxApiService;
+import com.migration.BoxConnectionPool;
+import com.migration.BoxFileMigrator;
+import com.migration.FolderSnapshot;
+import com.opencsv.CSVWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * @description JMH benchmarks for the hot paths of the migration, run against FakeBoxServer so no request leaves the
+ *              machine. Each benchmark reports throughput and a latency distribution. The fake server is set up with
+ *              the parameters below, which can be changed from the command line, e.g.
+ *              java -jar bench/target/benchmarks.jar -p latencyMillis=20 -p throttleRate=0.01 -p errorRate=0.01
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MigrationBenchmarks {
+
+    private static final int CSV_ROWS_PER_RESULT = 1000;
+    private static final int ORIGIN_SUBFOLDER_COUNT = 50;
+    private static final int POOL_CALLS_PER_OPERATION = 40;
+    private static final int POOL_CALLER_THREADS = 16;
+
+    @Param("5")
+    public long latencyMillis;
+
+    @Param("1000")
+    public int pageSize;
+
+    // Fraction of requests answered with a 429 or a 500.
+    @Param("0")
+    public double throttleRate;
+
+    @Param("0")
+    public double errorRate;
+
+    // Folders in the directory that getChildFoldersByName lists.
+    @Param("2000")
+    public int children;
+
+    private FakeBoxServer server;
+    private BoxAPIConnection api;
+    private String accountsDirectoryId;
+    private FolderSnapshot originInfo;
+    private FolderSnapshot destinationInfo;
+    private BoxFileMigrator.MigrationResult result;
+    private CSVWriter nullCsvWriter;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        Logger.getLogger("com.box.sdk").setLevel(java.util.logging.Level.OFF);
+
+        server = new FakeBoxServer();
+        server.setLatencyMillis(latencyMillis);
+        server.setMaxPageSize(pageSize);
+        server.start();
+
+        api = new BoxAPIConnection("benchmark-token");
+        api.setBaseURL(server.getBaseUrl());
+        api.setMaxRetryAttempts(0);
+        BoxApiService.setAPI(api);
+        // setAPI installs the default 15 calls/s limiter, which would make every benchmark measure the limiter rather
+        // than the code. Only getInfoThroughConnectionPool, which replaces this pool, is meant to be throttled.
+        BoxApiService.setConnectionPool(new BoxConnectionPool(List.of(
+                new BoxConnectionPool.Identity("benchmark", api, new ApiRateLimiter(1e6, 1e6)))));
+
+        // Build the fixture before turning on error injection so the setup itself is deterministic.
+        accountsDirectoryId = server.createFolder("0", "Accounts");
+        for (int i = 0; i < children; i++) {
+            server.createFolder(accountsDirectoryId, "Account " + i);
+        }
+
+        String originId = server.createFolder("0", "Origin");
+        for (int i = 0; i < ORIGIN_SUBFOLDER_COUNT; i++) {
+            server.createFolder(originId, "Subfolder " + i);
+        }
+        originInfo = new FolderSnapshot(originId, "Origin", 0);
+        destinationInfo = new FolderSnapshot(server.createFolder("0", "Destination"), "Destination", 0);
+
+        result = buildResult(api, originInfo, destinationInfo);
+        nullCsvWriter = new CSVWriter(Writer.nullWriter());
+
+        server.setThrottleRate(throttleRate);
+        server.setServerErrorRate(errorRate);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        System.out.println(BoxApiService.getConnectionPool().getSummary());
+        System.out.println("Fake server requests: " + server.getRequestCount());
+        server.stop();
+    }
+
+    @Benchmark
+    public int getChildFoldersByNameUncached() {
+        BoxApiService.getListingCache().invalidate(accountsDirectoryId);
+        return BoxApiService.getChildFoldersByName(accountsDirectoryId).size();
+    }
+
+    @Benchmark
+    public int getChildFoldersByNameCached() {
+        return BoxApiService.getChildFoldersByName(accountsDirectoryId).size();
+    }
+
+    @Benchmark
+    public int migrateFolders(EmptyDestination destination) {
+        return new BoxFileMigrator(api, originInfo, destinationInfo).migrateFolders().FileCopyResults.size();
+    }
+
+    @Benchmark
+    public int writeToCsv() {
+        result.writeToCsv(nullCsvWriter);
+        return result.FileCopyResults.size();
+    }
+
+    /**
+     * @description Throughput against a per-user quota, as one app user and spread over several.
+     */
+    @Benchmark
+    public int getInfoThroughConnectionPool(ConnectionPoolState connectionPool) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(POOL_CALLER_THREADS);
+        try {
+            List<Future<FolderSnapshot>> fetches = new ArrayList<Future<FolderSnapshot>>();
+            for (int i = 0; i < POOL_CALLS_PER_OPERATION; i++) {
+                fetches.add(executor.submit(() -> FolderSnapshot.fetch(new BoxFolder(api, accountsDirectoryId))));
+            }
+            for (Future<FolderSnapshot> fetch : fetches) {
+                fetch.get();
+            }
+            return POOL_CALLS_PER_OPERATION;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @description Empties the copy destination before every migrateFolders call, so each call copies every subfolder.
+     *              Emptying it is not timed.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyDestination {
+
+        @Setup(Level.Invocation)
+        public void clear(MigrationBenchmarks benchmarks) {
+            benchmarks.server.clearFolder(benchmarks.destinationInfo.Id);
+        }
+    }
+
+    /**
+     * @description Spreads the calls over this many app users, each with its own quota on the fake server.
+     */
+    @State(Scope.Benchmark)
+    public static class ConnectionPoolState {
+
+        @Param({"1", "4"})
+        public int identities;
+
+        @Param("20")
+        public double userRequestsPerSecond;
+
+        @Setup(Level.Trial)
+        public void buildPool(MigrationBenchmarks benchmarks) {
+            benchmarks.server.setRequestsPerSecondPerUser(userRequestsPerSecond);
+
+            List<BoxConnectionPool.Identity> poolIdentities = new ArrayList<BoxConnectionPool.Identity>();
+            for (int i = 0; i < identities; i++) {
+                // The fake server keys its quota by token, so each token stands in for a different app user.
+                BoxAPIConnection connection = new BoxAPIConnection("benchmark-user-" + i);
+                connection.setBaseURL(benchmarks.server.getBaseUrl());
+                connection.setMaxRetryAttempts(0);
+                poolIdentities.add(new BoxConnectionPool.Identity("benchmark-user-" + i, connection, new ApiRateLimiter()));
+            }
+            BoxApiService.setConnectionPool(new BoxConnectionPool(poolIdentities));
+        }
+    }
+
+    private static BoxFileMigrator.MigrationResult buildResult(BoxAPIConnection api, FolderSnapshot originInfo, FolderSnapshot destinationInfo) {
+        BoxFileMigrator migrator = new BoxFileMigrator(api, originInfo, destinationInfo);
+        BoxFileMigrator.MigrationResult result = migrator.new MigrationResult(originInfo);
+
+        for (int i = 0; i < CSV_ROWS_PER_RESULT; i++) {
+            BoxFileMigrator.CopyResult copyResult = migrator.new CopyResult();
+            copyResult.DestinationFolderInfo = destinationInfo;
+            copyResult.MigratedFolderInfo = new FolderSnapshot(String.valueOf(i), "Subfolder " + i, i * 1024L);
+            copyResult.Status = "Success";
+            result.FileCopyResults.add(copyResult);
+        }
+        return result;
+    }
+}
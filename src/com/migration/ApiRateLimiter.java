@@ -0,0 +1,134 @@
+package com.migration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description A token bucket shared by every thread that talks to the Box API. The refill rate adapts to the
+ *              responses we get back: it is halved whenever Box answers with a 429 and creeps back up while calls
+ *              succeed, so a parallel run settles just under the account's quota instead of hammering it.
+ */
+public class ApiRateLimiter {
+
+    public static final double DEFAULT_MAX_CALLS_PER_SECOND = 15.0;
+    public static final double DEFAULT_MIN_CALLS_PER_SECOND = 1.0;
+
+    // How much the rate grows back after each successful call.
+    private static final double RATE_INCREASE_PER_SUCCESS = 0.05;
+    private static final double RATE_DECREASE_FACTOR = 0.5;
+
+    private final double maxCallsPerSecond;
+    private final double minCallsPerSecond;
+    private final double burstCapacity;
+
+    private double callsPerSecond;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong throttleWaitNanos = new AtomicLong();
+
+    public ApiRateLimiter() {
+        this(DEFAULT_MAX_CALLS_PER_SECOND, DEFAULT_MIN_CALLS_PER_SECOND);
+    }
+
+    public ApiRateLimiter(double maxCallsPerSecond, double minCallsPerSecond) {
+        if (maxCallsPerSecond <= 0 || minCallsPerSecond <= 0 || minCallsPerSecond > maxCallsPerSecond) {
+            throw new IllegalArgumentException("The call rates must be positive and the minimum can not exceed the maximum.");
+        }
+
+        this.maxCallsPerSecond = maxCallsPerSecond;
+        this.minCallsPerSecond = minCallsPerSecond;
+        this.burstCapacity = Math.max(1.0, maxCallsPerSecond);
+        this.callsPerSecond = maxCallsPerSecond;
+        this.availableTokens = burstCapacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * @description Block until a call is allowed to go out.
+     */
+    public void acquire() throws InterruptedException {
+        long waitStart = System.nanoTime();
+
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+
+                if (now >= pausedUntilNanos && availableTokens >= 1.0) {
+                    availableTokens -= 1.0;
+                    break;
+                }
+
+                long tokenWait = (long)((1.0 - availableTokens) / callsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                waitNanos = Math.max(pausedUntilNanos - now, tokenWait);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+
+        callCount.incrementAndGet();
+        throttleWaitNanos.addAndGet(System.nanoTime() - waitStart);
+    }
+
+    /**
+     * @description Record a successful call so the rate can recover after earlier throttling.
+     */
+    public synchronized void onSuccess() {
+        callsPerSecond = Math.min(maxCallsPerSecond, callsPerSecond + RATE_INCREASE_PER_SUCCESS);
+    }
+
+    /**
+     * @description Record a 429. Halves the rate and, if Box told us how long to wait, stops everyone until then.
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        throttledCount.incrementAndGet();
+        callsPerSecond = Math.max(minCallsPerSecond, callsPerSecond * RATE_DECREASE_FACTOR);
+        availableTokens = Math.min(availableTokens, 0.0);
+
+        if (retryAfterMillis > 0) {
+            long resumeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            pausedUntilNanos = Math.max(pausedUntilNanos, resumeAt);
+        }
+    }
+
+    public void onRetry() {
+        retryCount.incrementAndGet();
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / (double)TimeUnit.SECONDS.toNanos(1);
+        availableTokens = Math.min(burstCapacity, availableTokens + elapsedSeconds * callsPerSecond);
+        lastRefillNanos = now;
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getThrottleWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttleWaitNanos.get());
+    }
+
+    public synchronized double getCurrentCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    public String getSummary() {
+        return "API Calls: " + getCallCount() + ", Retries: " + getRetryCount() + ", 429 Responses: " + getThrottledCount()
+                + ", Throttle Wait: " + getThrottleWaitMillis() + " (ms), Current Rate: "
+                + String.format("%.2f", getCurrentCallsPerSecond()) + " calls/s";
+    }
+}
@@ -1,50 +1,128 @@
 package com.migration;
 
 import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxAPIException;
 import com.box.sdk.BoxFolder;
 import com.box.sdk.BoxItem;
 import com.box.sdk.BoxConfig;
 import com.box.sdk.BoxDeveloperEditionAPIConnection;
 import com.box.sdk.DeveloperEditionEntityType;
 import com.box.sdk.IAccessTokenCache;
-import com.box.sdk.InMemoryLRUAccessTokenCache;
+import com.box.sdk.PartialCollection;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
- * @description This class is used to easily access the Box API throughout the program since only one API
- *              connection is needed per execution.
+ * @description This class is used to easily access the Box API throughout the program. Calls are spread over a
+ *              pool of connections, one per configured app user.
  */
 public class BoxApiService {
 
     private static final String JSON_CONFIG = "src/config/sacscoc-box-app-config.json";
-    private static final String USER_ID = "3668833979";
+    // The app users calls are spread over. Box rate limits each user on its own, so every user added here adds quota.
+    // Each one needs access to the origin and destination folders.
+    private static final String[] USER_IDS = new String[] {"3668833979"};
 
-    private static BoxAPIConnection api;
+    private static final String TOKEN_CACHE_FILE = "src/config/sacscoc-box-token-cache.bin";
 
-    private static final int DEFAULT_MAX_DEPTH = 0;
+    private static volatile BoxConnectionPool connectionPool;
+    private static final AtomicBoolean isFirstCallDone = new AtomicBoolean();
+    private static final FolderListingCache listingCache = new FolderListingCache();
+
+    /**
+     * @description How many levels below each origin folder a migration descends into. 0 only copies first-level subfolders.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 0;
     private static final int DEFAULT_MAX_TOKEN_ENTRIES = 100;
 
+    private static final int MAX_RETRIES = 8;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final String[] CHILD_FOLDER_INDEX_FIELDS = new String[] {"id", "name", "type"};
+
     private BoxApiService() {}
 
     public static BoxAPIConnection getAPI() {
-        if (api == null) {
-            try {
-                Reader reader = new FileReader(JSON_CONFIG);
-                BoxConfig boxConfig = BoxConfig.readFrom(reader);
-
-                IAccessTokenCache accessTokenCache = new InMemoryLRUAccessTokenCache(DEFAULT_MAX_TOKEN_ENTRIES);
-                api = new BoxDeveloperEditionAPIConnection(USER_ID, DeveloperEditionEntityType.USER, boxConfig, accessTokenCache);
-            } catch (IOException ex) {
-                System.out.println("Unable to open JSON Config to connect to box Api. Error: " + ex.getMessage());
-                return null;
+        BoxConnectionPool pool = getConnectionPool();
+        return pool == null ? null : pool.getPrimaryConnection();
+    }
+
+    /**
+     * @description The connections calls are spread over. Built from JSON_CONFIG on first use, with one connection per
+     *              user in USER_IDS.
+     */
+    public static BoxConnectionPool getConnectionPool() {
+        BoxConnectionPool pool = connectionPool;
+        if (pool != null) {
+            return pool;
+        }
+
+        synchronized (BoxApiService.class) {
+            if (connectionPool == null) {
+                long startNanos = System.nanoTime();
+                try {
+                    Reader reader = new FileReader(JSON_CONFIG);
+                    BoxConfig boxConfig = BoxConfig.readFrom(reader);
+
+                    // Tokens are kept in an encrypted file shared by every run and shard, so a connection only does a
+                    // JWT handshake when no other process has a valid token for its user. Entries are keyed by user.
+                    IAccessTokenCache accessTokenCache = new FileAccessTokenCache(new File(TOKEN_CACHE_FILE), boxConfig.getClientSecret(), DEFAULT_MAX_TOKEN_ENTRIES);
+
+                    // Connect every user at once; each may need its own handshake.
+                    List<CompletableFuture<BoxConnectionPool.Identity>> connecting = new ArrayList<CompletableFuture<BoxConnectionPool.Identity>>();
+                    for (String userId : USER_IDS) {
+                        connecting.add(CompletableFuture.supplyAsync(() -> {
+                            BoxAPIConnection connection = new BoxDeveloperEditionAPIConnection(userId, DeveloperEditionEntityType.USER, boxConfig, accessTokenCache);
+                            // Retries are handled by call() so that every 429 is seen by the rate limiter.
+                            connection.setMaxRetryAttempts(0);
+                            return new BoxConnectionPool.Identity(userId, connection, new ApiRateLimiter());
+                        }));
+                    }
+
+                    List<BoxConnectionPool.Identity> identities = new ArrayList<BoxConnectionPool.Identity>();
+                    for (CompletableFuture<BoxConnectionPool.Identity> identity : connecting) {
+                        identities.add(identity.join());
+                    }
+                    connectionPool = new BoxConnectionPool(identities);
+                    connectionPool.startRefreshAhead(BoxConnectionPool.DEFAULT_REFRESH_AHEAD_MILLIS);
+                } catch (IOException ex) {
+                    System.out.println("Unable to open JSON Config to connect to box Api. Error: " + ex.getMessage());
+                    return null;
+                }
+                System.out.println("Connected " + USER_IDS.length + " Box users in " + (System.nanoTime() - startNanos) / 1000000 + " (ms)");
             }
+            return connectionPool;
         }
+    }
 
-        return api;
+    /**
+     * @description Use the given connection instead of the ones built from JSON_CONFIG, e.g. one pointed at a local fake
+     *              Box server for benchmarks.
+     */
+    public static synchronized void setAPI(BoxAPIConnection connection) {
+        connectionPool = BoxConnectionPool.of(connection);
+    }
+
+    /**
+     * @description Use the given pool instead of the one built from JSON_CONFIG.
+     */
+    public static synchronized void setConnectionPool(BoxConnectionPool pool) {
+        connectionPool = pool;
     }
 
     public static HashMap<String, BoxFolder> getChildFoldersByName(String boxFolderId) {
@@ -52,16 +130,186 @@ public class BoxApiService {
         return getChildFoldersByName(folder);
     }
 
+    /**
+     * @description Group the child folders by name. The listing comes from the listing cache when it is fresh, and the
+     *              BoxFolder handles are built from ids so no extra calls are made.
+     */
     public static HashMap<String, BoxFolder> getChildFoldersByName(BoxFolder folder) {
         HashMap<String, BoxFolder> childFoldersByName = new HashMap<String, BoxFolder>();
 
-        for (BoxItem.Info itemInfo : folder) {
-            if (itemInfo instanceof BoxFolder.Info) {
-                childFoldersByName.put(itemInfo.getName(), (BoxFolder)itemInfo.getResource());
+        for (FolderListingCache.Entry child : listingCache.getChildren(folder)) {
+            if (child.isFolder()) {
+                childFoldersByName.put(child.Name, new BoxFolder(folder.getAPI(), child.Id));
             }
         }
 
         return childFoldersByName;
     }
+
+    /**
+     * @description Index the child folders by name in a compact FolderNameIndex. Meant for directories with too many
+     *              children to keep as BoxFolder objects, so the listing is streamed straight into the index instead of
+     *              going through the listing cache.
+     */
+    public static FolderNameIndex getChildFolderIndex(String boxFolderId) {
+        BoxFolder folder = new BoxFolder(BoxApiService.getAPI(), boxFolderId);
+        FolderNameIndex.Builder index = new FolderNameIndex.Builder();
+        forEachChild(folder, DEFAULT_PAGE_SIZE, CHILD_FOLDER_INDEX_FIELDS, itemInfo -> {
+            if (itemInfo instanceof BoxFolder.Info) {
+                index.add(itemInfo.getName(), itemInfo.getID());
+            }
+        });
+        return index.build(folder.getAPI());
+    }
+
+    public static FolderListingCache getListingCache() {
+        return listingCache;
+    }
+
+    /**
+     * @description List the folders directly inside the given folder as snapshots (id, name and size), one throttled
+     *              call per page.
+     */
+    public static List<FolderSnapshot> getChildFolders(BoxFolder folder) {
+        List<FolderSnapshot> childFolders = new ArrayList<FolderSnapshot>();
+        forEachChild(folder, DEFAULT_PAGE_SIZE, FolderSnapshot.FIELDS, itemInfo -> {
+            if (itemInfo instanceof BoxFolder.Info) {
+                childFolders.add(FolderSnapshot.of(itemInfo));
+            }
+        });
+        return childFolders;
+    }
+
+    /**
+     * @description Page through the children of a folder, asking only for the given fields. Each page is its own
+     *              throttled call, so a failure only repeats the page that failed.
+     */
+    public static void forEachChild(BoxFolder folder, int pageSize, String[] fields, Consumer<BoxItem.Info> action) {
+        long offset = 0;
+        long fullSize;
+
+        do {
+            final long pageOffset = offset;
+            PartialCollection<BoxItem.Info> page = call("listFolderPage",
+                    api -> new BoxFolder(api, folder.getID()).getChildrenRange(pageOffset, pageSize, fields));
+
+            for (BoxItem.Info itemInfo : page) {
+                action.accept(itemInfo);
+            }
+
+            fullSize = page.fullSize();
+            offset += page.size();
+
+            // Guard against an empty page before the reported end so we never loop forever.
+            if (page.isEmpty()) {
+                break;
+            }
+        } while (offset < fullSize);
+    }
+
+    /**
+     * @description Run a request against the Box API on the least-loaded connection in the pool, through that
+     *              identity's rate limiter. The request is given the connection to build its BoxFolder/BoxFile handles
+     *              from, so the call counts against that user's quota. Calls that fail with a 429 or a 5xx are retried
+     *              with jittered exponential backoff, honoring Retry-After when Box sends one. A retry may go out as a
+     *              different user than the attempt that was throttled.
+     */
+    public static <T> T call(String operation, Function<BoxAPIConnection, T> request) {
+        return call(operation, request, true);
+    }
+
+    /**
+     * @description Like call(), for requests that must not run twice, such as a copy. Box turns a 429 away before doing
+     *              any work, so those are still retried. A 5xx may come back after the server has already made the copy,
+     *              so it is thrown instead: retrying it could leave a duplicate or fail with a 409 against our own copy.
+     */
+    public static <T> T callOnce(String operation, Function<BoxAPIConnection, T> request) {
+        return call(operation, request, false);
+    }
+
+    private static <T> T call(String operation, Function<BoxAPIConnection, T> request, boolean isIdempotent) {
+        BoxConnectionPool pool = getConnectionPool();
+        int attempt = 0;
+
+        while (true) {
+            BoxConnectionPool.Identity identity;
+            try {
+                identity = pool.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BoxAPIException("Interrupted while waiting to call " + operation);
+            }
+
+            // Time each attempt on its own, so retries show up in the tail latency instead of hiding in one sample.
+            long startNanos = System.nanoTime();
+            try {
+                T response = request.apply(identity.Connection);
+                MigrationMetrics.get().recordLatency(operation, startNanos, true);
+                if (!isFirstCallDone.get() && isFirstCallDone.compareAndSet(false, true)) {
+                    System.out.println("Time from JVM start to first API call: " + ManagementFactory.getRuntimeMXBean().getUptime() + " (ms)");
+                }
+                identity.RateLimiter.onSuccess();
+                return response;
+            } catch (BoxAPIException ex) {
+                MigrationMetrics.get().recordLatency(operation, startNanos, false);
+                int responseCode = ex.getResponseCode();
+                boolean isThrottled = responseCode == TOO_MANY_REQUESTS;
+                boolean isRetryable = isThrottled || (isIdempotent && responseCode >= 500);
+
+                if (!isRetryable || attempt >= MAX_RETRIES) {
+                    throw ex;
+                }
+
+                long retryAfterMillis = getRetryAfterMillis(ex);
+                if (isThrottled) {
+                    identity.RateLimiter.onThrottled(retryAfterMillis);
+                }
+
+                long backoffMillis = Math.max(retryAfterMillis, getBackoffMillis(attempt));
+                System.out.println("Retrying " + operation + " after response " + responseCode + " in " + backoffMillis + " (ms)");
+                identity.RateLimiter.onRetry();
+                attempt++;
+
+                // Release before backing off so the wait doesn't count as load on this identity.
+                pool.release(identity);
+                identity = null;
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interruptedEx) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            } finally {
+                if (identity != null) {
+                    pool.release(identity);
+                }
+            }
+        }
+    }
+
+    private static long getBackoffMillis(int attempt) {
+        // "Full jitter": pick a random wait up to the exponential ceiling so retrying threads spread out.
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MILLIS / 2, ceiling + 1);
+    }
+
+    private static long getRetryAfterMillis(BoxAPIException ex) {
+        Map<String, List<String>> headers = ex.getHeaders();
+        if (headers == null) {
+            return 0;
+        }
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                try {
+                    return Long.parseLong(header.getValue().get(0).trim()) * 1000;
+                } catch (NumberFormatException ex2) {
+                    return 0;
+                }
+            }
+        }
+
+        return 0;
+    }
 }
 
@@ -0,0 +1,160 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @description API connections for several Box app users, each with its own rate limiter. Box enforces its request
+ *              quota per user, so spreading calls over N users gives roughly N times the throughput of a single one.
+ *              Each call goes to the least-loaded identity: the one with the fewest calls in flight for the rate it is
+ *              currently allowed, so an identity that is being throttled gets less work until it recovers.
+ *              Every configured user must be able to see the origin and destination folders (e.g. as collaborators).
+ *              BoxAPIConnection guards its token refresh with a lock, so one connection per identity is shared by
+ *              every thread.
+ */
+public class BoxConnectionPool {
+
+    public static final long DEFAULT_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long REFRESH_CHECK_INTERVAL_SECONDS = 60;
+
+    private final List<Identity> identities;
+    private ScheduledExecutorService refresher;
+
+    public BoxConnectionPool(List<Identity> identities) {
+        if (identities == null || identities.isEmpty()) {
+            throw new IllegalArgumentException("The connection pool needs at least one identity.");
+        }
+        this.identities = Collections.unmodifiableList(new ArrayList<Identity>(identities));
+    }
+
+    /**
+     * @description A pool with a single identity and the default rate limits.
+     */
+    public static BoxConnectionPool of(BoxAPIConnection connection) {
+        List<Identity> identities = new ArrayList<Identity>();
+        identities.add(new Identity("default", connection, new ApiRateLimiter()));
+        return new BoxConnectionPool(identities);
+    }
+
+    /**
+     * @description Pick the least-loaded identity and wait for its rate limiter. The caller must release() it when
+     *              the call is done.
+     */
+    public Identity acquire() throws InterruptedException {
+        Identity leastLoaded = null;
+        double lowestLoad = Double.MAX_VALUE;
+        for (Identity identity : identities) {
+            double load = (identity.InFlight.get() + 1) / identity.RateLimiter.getCurrentCallsPerSecond();
+            if (load < lowestLoad) {
+                leastLoaded = identity;
+                lowestLoad = load;
+            }
+        }
+
+        leastLoaded.InFlight.incrementAndGet();
+        try {
+            leastLoaded.RateLimiter.acquire();
+        } catch (InterruptedException ex) {
+            leastLoaded.InFlight.decrementAndGet();
+            throw ex;
+        }
+        return leastLoaded;
+    }
+
+    public void release(Identity identity) {
+        identity.InFlight.decrementAndGet();
+    }
+
+    /**
+     * @description Refresh each connection's token in the background once it is within refreshAheadMillis of expiring,
+     *              so no call ever waits on a token refresh in the middle of a run. Only for connections that can refresh
+     *              themselves, i.e. ones built from the app config.
+     */
+    public synchronized void startRefreshAhead(long refreshAheadMillis) {
+        if (refresher != null) {
+            return;
+        }
+
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "box-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            for (Identity identity : identities) {
+                BoxAPIConnection connection = identity.Connection;
+                long expiresAt = connection.getLastRefresh() + connection.getExpires();
+                if (System.currentTimeMillis() < expiresAt - refreshAheadMillis) {
+                    continue;
+                }
+
+                try {
+                    connection.refresh();
+                    System.out.println("Refreshed the access token for user " + identity.UserId + " ahead of expiry.");
+                } catch (RuntimeException ex) {
+                    // The SDK still refreshes on demand, so a failure here only costs the head start.
+                    System.out.println("Unable to refresh the access token for user " + identity.UserId + ". Error: " + ex.getMessage());
+                }
+            }
+        }, 0, REFRESH_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @description The connection of the first identity. Used to build BoxFolder handles; the calls themselves are
+     *              routed through acquire().
+     */
+    public BoxAPIConnection getPrimaryConnection() {
+        return identities.get(0).Connection;
+    }
+
+    public List<Identity> getIdentities() {
+        return identities;
+    }
+
+    /**
+     * @description The combined call rate currently allowed across all identities.
+     */
+    public double getCurrentCallsPerSecond() {
+        double callsPerSecond = 0;
+        for (Identity identity : identities) {
+            callsPerSecond += identity.RateLimiter.getCurrentCallsPerSecond();
+        }
+        return callsPerSecond;
+    }
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Identity identity : identities) {
+            if (summary.length() > 0) {
+                summary.append(System.lineSeparator());
+            }
+            summary.append("User ").append(identity.UserId).append(" - ").append(identity.RateLimiter.getSummary());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @description One app user: its connection, its own rate limiter and the number of its calls in flight.
+     */
+    public static class Identity {
+
+        public Identity(String userId, BoxAPIConnection connection, ApiRateLimiter rateLimiter) {
+            UserId = userId;
+            Connection = connection;
+            RateLimiter = rateLimiter;
+        }
+
+        public final String UserId;
+        public final BoxAPIConnection Connection;
+        public final ApiRateLimiter RateLimiter;
+        final AtomicInteger InFlight = new AtomicInteger();
+    }
+}
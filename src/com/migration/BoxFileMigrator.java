@@ -3,12 +3,11 @@ package com.migration;
 import com.opencsv.CSVWriter;
 
 import java.io.IOException;
-import java.util.Map;
 import java.util.HashMap;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
 
-import com.box.sdk.BoxItem;
+import com.box.sdk.BoxAPIConnection;
 import com.box.sdk.BoxFolder;
 
 /**
@@ -16,6 +15,9 @@ import com.box.sdk.BoxFolder;
  */
 public class BoxFileMigrator {
 
+    /**
+     * @description Build a migrator from bare folder handles. Fetches one metadata snapshot per folder.
+     */
     public BoxFileMigrator(BoxFolder originFolder, BoxFolder destinationFolder) {
         if (originFolder == null) {
             throw new IllegalArgumentException("The origin folder can not be null.");
@@ -23,6 +25,22 @@ public class BoxFileMigrator {
 
         Origin = originFolder;
         Destination = destinationFolder;
+        OriginInfo = FolderSnapshot.fetch(originFolder);
+        DestinationInfo = destinationFolder == null ? null : FolderSnapshot.fetch(destinationFolder);
+    }
+
+    /**
+     * @description Build a migrator from snapshots that were already fetched (e.g. from a listing). Makes no API calls.
+     */
+    public BoxFileMigrator(BoxAPIConnection api, FolderSnapshot originInfo, FolderSnapshot destinationInfo) {
+        if (originInfo == null) {
+            throw new IllegalArgumentException("The origin folder can not be null.");
+        }
+
+        Origin = new BoxFolder(api, originInfo.Id);
+        Destination = destinationInfo == null ? null : new BoxFolder(api, destinationInfo.Id);
+        OriginInfo = originInfo;
+        DestinationInfo = destinationInfo;
     }
 
     /**
@@ -35,15 +53,42 @@ public class BoxFileMigrator {
      */
     public BoxFolder Destination;
 
+    /**
+     * @description The metadata of Origin, captured when the migrator was built.
+     */
+    public final FolderSnapshot OriginInfo;
+
+    /**
+     * @description The metadata of Destination, captured when the migrator was built. Null when Destination is null.
+     */
+    public final FolderSnapshot DestinationInfo;
+
+    /**
+     * @description How sure we are that Destination is the right folder for Origin, from 0 (no match) to 1 (exact name or explicit mapping).
+     */
+    public double MatchConfidence = 1.0;
+
+    /**
+     * @description How many levels below Origin to descend. At 0, a subfolder that already exists in the destination is
+     *              left alone. Above 0, it is synced file by file with RecursiveFolderSync so partial migrations get finished.
+     */
+    public int MaxDepth = BoxApiService.DEFAULT_MAX_DEPTH;
+
+    /**
+     * @description When set, every subfolder that ends up in the destination is compared with its origin afterwards and
+     *              the outcome is written to the Verification column. Null skips verification.
+     */
+    public FolderVerifier Verifier;
+
     public void print() {
         System.out.println(getMigrationDetails());
     }
 
     private String getMigrationDetails() {
-        String migrationDetails = "Original Box Folder: " + Origin.getInfo().getName() + " - " + Origin.getInfo().getID();
+        String migrationDetails = "Original Box Folder: " + OriginInfo;
 
-        if (Destination != null) {
-            migrationDetails += " New Box Folder: " + Destination.getInfo().getName() + " - " + Destination.getInfo().getID();
+        if (DestinationInfo != null) {
+            migrationDetails += " New Box Folder: " + DestinationInfo;
         } else {
             migrationDetails += " New Box Folder: null - null";
         }
@@ -52,82 +97,247 @@ public class BoxFileMigrator {
     }
 
     public MigrationResult migrateFolders() {
-        MigrationResult result = new MigrationResult(Origin.getInfo());
+        return migrateFolders(null, null);
+    }
+
+    /**
+     * @description Migrate the folders, holding a permit from the limiter (if one is given) for the duration of each copy.
+     *              If a journal is given, subfolders it already lists are skipped and finished work is recorded in it.
+     */
+    public MigrationResult migrateFolders(MigrationEngine.DestinationCopyLimiter copyLimiter, MigrationJournal journal) {
+        FolderSnapshot originInfo = OriginInfo;
+        MigrationResult result = new MigrationResult(originInfo);
+        result.MatchConfidence = Destination == null ? 0 : MatchConfidence;
 
-        System.out.println("Migrate Files From Folder: " + Origin.getInfo().getName());
+        System.out.println("Migrate Files From Folder: " + originInfo.Name);
 
         // If the Destination is null, we couldn't find an exact match to the origin folder.
         // Therefore we don't need to do any actual migration so return early.
         if (Destination == null) {
             CopyResult copyResult = new CopyResult();
             copyResult.Status = "No Match";
-            copyResult.Details = "No Match for Folder Named: " + Origin.getInfo().getName();
+            copyResult.Details = "No Match for Folder Named: " + originInfo.Name;
             result.FileCopyResults.add(copyResult);
             return result;
         }
 
         HashMap<String, BoxFolder> destinationFoldersByName = BoxApiService.getChildFoldersByName(Destination);
+        FolderSnapshot destinationInfo = DestinationInfo;
+        boolean allFoldersHandled = true;
 
-        for (BoxItem.Info itemInfo : Origin) {
+        for (FolderSnapshot itemInfo : BoxApiService.getChildFolders(Origin)) {
             // For each folder in the origin folder, look to see if a folder by that name already exists in the destination.
             // If so, don't do any migration but still create a log entry.
-            if (itemInfo instanceof BoxFolder.Info) {
-                CopyResult copyResult = new CopyResult();
-                copyResult.DestinationFolderInfo = Destination.getInfo();
-                copyResult.MigratedFolderInfo = (BoxFolder.Info)itemInfo;
-
-                BoxFolder existingFolder = destinationFoldersByName.get(itemInfo.getName());
-                if (existingFolder == null) {
-                    try {
-                        // No existing folder so do the migration.
-                        // TODO The actual migration. For now, lets just generate a log file to verify the output.
-                        BoxFolder folderToMigrate = (BoxFolder)itemInfo.getResource();
-                        folderToMigrate.copy(Destination);
-                        copyResult.Status = "Success";
-                    } catch (Exception ex) {
-                        copyResult.Status = "Error";
-                        copyResult.Details = "Error: " + ex.getMessage();
+            CopyResult copyResult = new CopyResult();
+            copyResult.DestinationFolderInfo = destinationInfo;
+            copyResult.MigratedFolderInfo = itemInfo;
+
+            BoxFolder existingFolder = destinationFoldersByName.get(itemInfo.Name);
+            // The folder in the destination that should now match the origin, for verification.
+            String copiedFolderId = existingFolder == null ? null : existingFolder.getID();
+            if (journal != null && journal.isComplete(originInfo.Id, itemInfo.Id)) {
+                // An earlier run already copied this folder.
+                copyResult.Status = "Previously Migrated";
+                copyResult.Details = "Folder " + itemInfo.Name + " is recorded as migrated in the journal";
+            } else if (existingFolder == null) {
+                try {
+                    // No existing folder so do the migration.
+                    BoxFolder folderToMigrate = new BoxFolder(Origin.getAPI(), itemInfo.Id);
+                    copiedFolderId = copyFolder(folderToMigrate, copyLimiter).getID();
+                    copyResult.Status = "Success";
+                    recordCompletion(journal, originInfo.Id, itemInfo.Id);
+                } catch (Exception ex) {
+                    copyResult.Status = "Error";
+                    copyResult.Details = "Error: " + ex.getMessage();
+                    allFoldersHandled = false;
+                }
+            } else if (MaxDepth > 0) {
+                // A folder by that name already exists in the destination. It may only be partly migrated, so copy
+                // whatever is missing or changed inside it.
+                try {
+                    BoxFolder folderToSync = new BoxFolder(Origin.getAPI(), itemInfo.Id);
+                    RecursiveFolderSync.SyncResult syncResult = new RecursiveFolderSync(MaxDepth - 1).sync(folderToSync, existingFolder);
+                    copyResult.Status = syncResult.Errors > 0 ? "Error" : (syncResult.isUpToDate() ? "Up To Date" : "Synced");
+                    copyResult.Details = syncResult.toString();
+
+                    if (syncResult.Errors == 0) {
+                        recordCompletion(journal, originInfo.Id, itemInfo.Id);
+                    } else {
+                        allFoldersHandled = false;
                     }
-                } else {
-                    // A folder by that name already exists in the destination. Assume we already migrated these files, write a log entry and continue.
-                    copyResult.Status = "Folder Already Exists";
-                    copyResult.Details = "Folder " + itemInfo.getName() + " already exists in destination " + copyResult.DestinationFolderInfo.getName();
+                } catch (Exception ex) {
+                    copyResult.Status = "Error";
+                    copyResult.Details = "Error: " + ex.getMessage();
+                    allFoldersHandled = false;
                 }
-                result.FileCopyResults.add(copyResult);
+            } else {
+                // A folder by that name already exists in the destination. Assume we already migrated these files, write a log entry and continue.
+                // It was never checked, so it isn't journaled: a later run with MaxDepth above 0 must still sync it.
+                copyResult.Status = "Folder Already Exists";
+                copyResult.Details = "Folder " + itemInfo.Name + " already exists in destination " + copyResult.DestinationFolderInfo.Name;
+                allFoldersHandled = false;
+            }
+
+            if (Verifier != null && copiedFolderId != null && !"Error".equals(copyResult.Status)) {
+                verify(copyResult, itemInfo.Id, copiedFolderId);
+            }
+            result.FileCopyResults.add(copyResult);
+        }
+
+        // Only skip this origin folder on a restart if nothing failed or was left unchecked. Otherwise the next run
+        // retries the failures and syncs the folders that already existed.
+        if (allFoldersHandled && journal != null) {
+            try {
+                journal.markOriginComplete(originInfo.Id);
+            } catch (IOException ex) {
+                System.out.println("Unable to write to the migration journal. Error: " + ex.getMessage());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @description A result for when migrating or verifying this folder failed outright, so the origin still gets a row
+     *              in the log and is counted as an error.
+     */
+    public MigrationResult getErrorResult(Exception ex) {
+        MigrationResult result = new MigrationResult(OriginInfo);
+        result.MatchConfidence = Destination == null ? 0 : MatchConfidence;
+
+        CopyResult copyResult = new CopyResult();
+        copyResult.DestinationFolderInfo = DestinationInfo;
+        copyResult.Status = "Error";
+        copyResult.Details = "Error: " + ex.getMessage();
+        result.FileCopyResults.add(copyResult);
+        return result;
+    }
+
+    /**
+     * @description Compare each origin subfolder with the folder of the same name in the destination without copying
+     *              anything. Uses Verifier, which must be set.
+     */
+    public MigrationResult verifyFolders() {
+        if (Verifier == null) {
+            throw new IllegalStateException("A verifier is needed to verify folders.");
+        }
+
+        MigrationResult result = new MigrationResult(OriginInfo);
+        result.MatchConfidence = Destination == null ? 0 : MatchConfidence;
+
+        System.out.println("Verify Files From Folder: " + OriginInfo.Name);
+
+        if (Destination == null) {
+            CopyResult copyResult = new CopyResult();
+            copyResult.Status = "No Match";
+            copyResult.Details = "No Match for Folder Named: " + OriginInfo.Name;
+            result.FileCopyResults.add(copyResult);
+            return result;
+        }
+
+        HashMap<String, BoxFolder> destinationFoldersByName = BoxApiService.getChildFoldersByName(Destination);
+        for (FolderSnapshot itemInfo : BoxApiService.getChildFolders(Origin)) {
+            CopyResult copyResult = new CopyResult();
+            copyResult.DestinationFolderInfo = DestinationInfo;
+            copyResult.MigratedFolderInfo = itemInfo;
+
+            BoxFolder copiedFolder = destinationFoldersByName.get(itemInfo.Name);
+            if (copiedFolder == null) {
+                copyResult.Status = "Not Migrated";
+                copyResult.Details = "Folder " + itemInfo.Name + " does not exist in destination " + DestinationInfo.Name;
+            } else {
+                verify(copyResult, itemInfo.Id, copiedFolder.getID());
+                copyResult.Status = copyResult.Verification;
             }
+            result.FileCopyResults.add(copyResult);
         }
 
         return result;
     }
 
+    private void verify(CopyResult copyResult, String originFolderId, String copiedFolderId) {
+        try {
+            FolderVerifier.Verification verification = Verifier.verify(originFolderId, copiedFolderId);
+            copyResult.Verification = verification.Status;
+            if (!verification.isVerified()) {
+                copyResult.Details = (copyResult.Details == null ? "" : copyResult.Details + " ") + "Differences: " + verification.Differences;
+            }
+        } catch (Exception ex) {
+            copyResult.Verification = "Error";
+            copyResult.Details = (copyResult.Details == null ? "" : copyResult.Details + " ") + "Verification Error: " + ex.getMessage();
+        }
+    }
+
+    private static void recordCompletion(MigrationJournal journal, String originFolderId, String migratedFolderId) {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.markComplete(originFolderId, migratedFolderId);
+        } catch (IOException ex) {
+            // The copy itself worked, so don't fail it. The worst case is a "Folder Already Exists" on the next run.
+            System.out.println("Unable to write to the migration journal. Error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The new copy.
+     */
+    private BoxFolder.Info copyFolder(BoxFolder folderToMigrate, MigrationEngine.DestinationCopyLimiter copyLimiter) throws InterruptedException {
+        if (copyLimiter != null) {
+            copyLimiter.acquire(Destination.getID());
+        }
+        try {
+            return BoxApiService.callOnce("copyFolder", api -> new BoxFolder(api, folderToMigrate.getID()).copy(new BoxFolder(api, Destination.getID())));
+        } finally {
+            if (copyLimiter != null) {
+                copyLimiter.release(Destination.getID());
+            }
+            // The destination may have changed even if the copy failed: a 5xx can come back after Box made the copy.
+            // Either way a cached listing of it can no longer be trusted.
+            BoxApiService.getListingCache().invalidate(Destination.getID());
+        }
+    }
+
     private static final String EMPTY_VALUE = " ";
 
+    /**
+     * @description The number of columns in one CSV log row.
+     */
+    public static final int CSV_COLUMN_COUNT = 11;
+
     /**
      * @description A summary of all the results. It is used to write results to CSV.
      */
     public class MigrationResult {
 
-        public MigrationResult(BoxFolder.Info originInfo) {
+        public MigrationResult(FolderSnapshot originInfo) {
             OriginFolderInfo = originInfo;
             FileCopyResults = new ArrayList<CopyResult>();
         }
 
-        public BoxFolder.Info OriginFolderInfo;
+        public FolderSnapshot OriginFolderInfo;
         public ArrayList<CopyResult> FileCopyResults;
+        public double MatchConfidence;
 
         public void writeToCsv(CSVWriter csvToWrite) {
-            for (CopyResult result : FileCopyResults) {
-                ArrayList<String> csvRowData = startNewCsvRow();
-                csvRowData.addAll(result.getCsvRowData());
-                csvToWrite.writeNext(csvRowData.toArray(new String[csvRowData.size()]));
-            }
+            writeToCsv(csvToWrite, new String[CSV_COLUMN_COUNT]);
         }
 
-        public ArrayList<String> startNewCsvRow() {
-            ArrayList<String> newCsvRow = new ArrayList<String>();
-            newCsvRow.add(OriginFolderInfo.getName());
-            newCsvRow.add(OriginFolderInfo.getID());
-            return newCsvRow;
+        /**
+         * @description Write one row per copy result, reusing the given row array so no per-row lists are built.
+         */
+        public void writeToCsv(CSVWriter csvToWrite, String[] csvRow) {
+            String matchConfidence = String.format(Locale.ROOT, "%.2f", MatchConfidence);
+            csvRow[0] = OriginFolderInfo.Name;
+            csvRow[1] = OriginFolderInfo.Id;
+
+            for (CopyResult result : FileCopyResults) {
+                result.fillCsvRow(csvRow, 2);
+                csvRow[CSV_COLUMN_COUNT - 1] = matchConfidence;
+                csvToWrite.writeNext(csvRow);
+            }
         }
     }
 
@@ -135,35 +345,40 @@ public class BoxFileMigrator {
      * @description The result of copying one folder/file.
      */
     public class CopyResult {
-        public BoxFolder.Info DestinationFolderInfo;
-        public BoxFolder.Info MigratedFolderInfo;
+        public FolderSnapshot DestinationFolderInfo;
+        public FolderSnapshot MigratedFolderInfo;
         public String Details;
         public String Status;
+        /**
+         * @description FolderVerifier.VERIFIED, FolderVerifier.MISMATCH or "Error", or null if the folder wasn't verified.
+         */
+        public String Verification;
 
-        public ArrayList<String> getCsvRowData() {
-            ArrayList<String> csvRowData = new ArrayList<String>();
-
+        /**
+         * @description Fill in this result's columns of a CSV row, starting at the given column.
+         */
+        public void fillCsvRow(String[] csvRow, int column) {
             if (DestinationFolderInfo == null) {
-                csvRowData.add(EMPTY_VALUE);
-                csvRowData.add(EMPTY_VALUE);
+                csvRow[column++] = EMPTY_VALUE;
+                csvRow[column++] = EMPTY_VALUE;
             } else {
-                csvRowData.add(DestinationFolderInfo.getName());
-                csvRowData.add(DestinationFolderInfo.getID());
+                csvRow[column++] = DestinationFolderInfo.Name;
+                csvRow[column++] = DestinationFolderInfo.Id;
             }
 
             if (MigratedFolderInfo == null) {
-                csvRowData.add(EMPTY_VALUE);
-                csvRowData.add(EMPTY_VALUE);
-                csvRowData.add("0");
+                csvRow[column++] = EMPTY_VALUE;
+                csvRow[column++] = EMPTY_VALUE;
+                csvRow[column++] = "0";
             } else {
-                csvRowData.add(MigratedFolderInfo.getName());
-                csvRowData.add(MigratedFolderInfo.getID());
-                csvRowData.add(String.valueOf(MigratedFolderInfo.getSize()));
+                csvRow[column++] = MigratedFolderInfo.Name;
+                csvRow[column++] = MigratedFolderInfo.Id;
+                csvRow[column++] = String.valueOf(MigratedFolderInfo.Size);
             }
 
-            csvRowData.add(Status);
-            csvRowData.add(Details);
-            return csvRowData;
+            csvRow[column++] = Status;
+            csvRow[column++] = Details;
+            csvRow[column] = Verification == null ? EMPTY_VALUE : Verification;
         }
     }
 }
@@ -0,0 +1,275 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxEvent;
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+import com.box.sdk.BoxResource;
+import com.box.sdk.EventListener;
+import com.box.sdk.EventStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description Keeps destinations up to date after the bulk migration by following the Box event stream instead of
+ *              re-listing every folder. Events for items under a paired origin folder mark the item's parent folder as
+ *              dirty. Every few seconds the dirty folders are synced with RecursiveFolderSync against the matching
+ *              destination folder (found by walking the same path by name), so only the folders that changed are listed.
+ *              The stream position is saved after each batch has been synced, so a restart resumes from the last
+ *              synced event instead of rescanning. Deletes and renames are not propagated; the migration never removes
+ *              anything.
+ */
+public class EventStreamSync {
+
+    public static final long DEFAULT_BATCH_INTERVAL_MILLIS = 2000;
+
+    // Events that can add or change an item in an origin folder. Renames are left out: the copy under the old name
+    // would stay in the destination next to one under the new name.
+    private static final Set<BoxEvent.EventType> CHANGE_EVENTS = EnumSet.of(BoxEvent.EventType.ITEM_CREATE,
+            BoxEvent.EventType.ITEM_UPLOAD, BoxEvent.EventType.ITEM_COPY, BoxEvent.EventType.ITEM_MOVE,
+            BoxEvent.EventType.ITEM_UNDELETE_VIA_TRASH);
+
+    private static final long NO_POSITION = -1;
+
+    private final BoxAPIConnection api;
+    private final Map<String, FolderSnapshot> destinationByOriginId;
+    private final File positionFile;
+    private final int maxDepth;
+    private final long batchIntervalMillis;
+
+    // Origin folder id -> the path from its paired origin folder. Guarded by this.
+    private Map<String, DirtyFolder> dirtyFolders = new LinkedHashMap<String, DirtyFolder>();
+    private long streamPosition = NO_POSITION;
+    private long savedPosition = NO_POSITION;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private long eventCount = 0;
+    private long syncedFolderCount = 0;
+
+    /**
+     * @param destinationByOriginId The destination folder for each paired origin folder.
+     * @param maxDepth How far below a changed folder to sync. 0 syncs only the items directly inside it.
+     */
+    public EventStreamSync(BoxAPIConnection api, Map<String, FolderSnapshot> destinationByOriginId, File positionFile,
+                           int maxDepth, long batchIntervalMillis) {
+        if (maxDepth < 0 || batchIntervalMillis < 1) {
+            throw new IllegalArgumentException("The max depth can not be negative and the batch interval must be at least 1.");
+        }
+
+        this.api = api;
+        this.destinationByOriginId = destinationByOriginId;
+        this.positionFile = positionFile;
+        this.maxDepth = maxDepth;
+        this.batchIntervalMillis = batchIntervalMillis;
+    }
+
+    /**
+     * @description Follow the event stream and sync changes until stop() is called. Starts from the saved position if
+     *              there is one, otherwise from now.
+     */
+    public void run() throws IOException, InterruptedException {
+        savedPosition = readPosition();
+        EventStream stream = savedPosition == NO_POSITION ? new EventStream(api) : new EventStream(api, savedPosition);
+        stream.addListener(new EventListener() {
+            @Override
+            public void onEvent(BoxEvent event) {
+                handleEvent(event);
+            }
+
+            @Override
+            public void onNextPosition(long position) {
+                synchronized (EventStreamSync.this) {
+                    streamPosition = position;
+                }
+            }
+
+            @Override
+            public boolean onException(Throwable ex) {
+                // Keep the stream going; it reconnects on its own.
+                System.out.println("Error reading the event stream: " + ex.getMessage());
+                return true;
+            }
+        });
+
+        System.out.println("Following the event stream for " + destinationByOriginId.size() + " paired folders"
+                + (savedPosition == NO_POSITION ? " from now." : " from position " + savedPosition + "."));
+        stream.start();
+
+        try {
+            while (!stopped.await(batchIntervalMillis, TimeUnit.MILLISECONDS)) {
+                syncDirtyFolders();
+            }
+            syncDirtyFolders();
+        } finally {
+            stream.stop();
+        }
+    }
+
+    public void stop() {
+        stopped.countDown();
+    }
+
+    private void handleEvent(BoxEvent event) {
+        if (!CHANGE_EVENTS.contains(event.getEventType())) {
+            return;
+        }
+
+        BoxResource.Info sourceInfo = event.getSourceInfo();
+        if (!(sourceInfo instanceof BoxItem.Info)) {
+            return;
+        }
+
+        BoxItem.Info itemInfo = (BoxItem.Info)sourceInfo;
+        List<BoxFolder.Info> pathCollection = itemInfo.getPathCollection();
+        if (pathCollection == null) {
+            return;
+        }
+
+        // Find the paired origin folder above the item, and keep the folders between it and the item's parent.
+        for (int i = 0; i < pathCollection.size(); i++) {
+            String ancestorId = pathCollection.get(i).getID();
+            if (destinationByOriginId.containsKey(ancestorId)) {
+                // The migration only copies a paired folder's subfolders, so its loose files are never synced.
+                if (i == pathCollection.size() - 1 && !(itemInfo instanceof BoxFolder.Info)) {
+                    return;
+                }
+
+                DirtyFolder dirtyFolder = new DirtyFolder(ancestorId, new ArrayList<BoxFolder.Info>(pathCollection.subList(i + 1, pathCollection.size())));
+                synchronized (this) {
+                    eventCount++;
+                    dirtyFolders.putIfAbsent(dirtyFolder.getOriginFolderId(), dirtyFolder);
+                }
+                return;
+            }
+        }
+    }
+
+    private void syncDirtyFolders() throws IOException {
+        Map<String, DirtyFolder> batch;
+        long batchPosition;
+        synchronized (this) {
+            if (dirtyFolders.isEmpty()) {
+                // Nothing outstanding, so every event up to here is handled.
+                if (streamPosition != NO_POSITION) {
+                    writePosition(streamPosition);
+                }
+                return;
+            }
+
+            batch = dirtyFolders;
+            batchPosition = streamPosition;
+            dirtyFolders = new LinkedHashMap<String, DirtyFolder>();
+        }
+
+        List<DirtyFolder> failed = new ArrayList<DirtyFolder>();
+        for (DirtyFolder dirtyFolder : batch.values()) {
+            try {
+                syncFolder(dirtyFolder);
+                syncedFolderCount++;
+            } catch (Exception ex) {
+                System.out.println("Error syncing " + dirtyFolder + ": " + ex.getMessage());
+                failed.add(dirtyFolder);
+            }
+        }
+
+        synchronized (this) {
+            for (DirtyFolder dirtyFolder : failed) {
+                dirtyFolders.putIfAbsent(dirtyFolder.getOriginFolderId(), dirtyFolder);
+            }
+        }
+
+        // Only move the saved position past this batch once all of it is synced, so a crash replays what was missed.
+        if (failed.isEmpty() && batchPosition != NO_POSITION) {
+            writePosition(batchPosition);
+        }
+        System.out.println("Synced " + (batch.size() - failed.size()) + " changed folders (" + failed.size() + " failed). Events: "
+                + eventCount + ", folders synced: " + syncedFolderCount);
+    }
+
+    private void syncFolder(DirtyFolder dirtyFolder) {
+        // Walk down from the paired destination by name. Stop at the first folder missing from the destination and sync
+        // its parent instead, which copies the missing folder whole.
+        BoxFolder origin = new BoxFolder(api, dirtyFolder.OriginRootId);
+        BoxFolder destination = new BoxFolder(api, destinationByOriginId.get(dirtyFolder.OriginRootId).Id);
+
+        for (BoxFolder.Info originFolder : dirtyFolder.Path) {
+            BoxFolder destinationFolder = BoxApiService.getChildFoldersByName(destination).get(originFolder.getName());
+            if (destinationFolder == null) {
+                break;
+            }
+            origin = new BoxFolder(api, originFolder.getID());
+            destination = destinationFolder;
+        }
+
+        // At the paired folder itself only the subfolders are synced, like the migration copies them.
+        RecursiveFolderSync sync = new RecursiveFolderSync(maxDepth);
+        RecursiveFolderSync.SyncResult result = origin.getID().equals(dirtyFolder.OriginRootId)
+                ? sync.syncSubfolders(origin, destination)
+                : sync.sync(origin, destination);
+        System.out.println("Synced " + dirtyFolder + ": " + result);
+    }
+
+    private long readPosition() throws IOException {
+        if (!positionFile.exists()) {
+            return NO_POSITION;
+        }
+
+        String position = new String(Files.readAllBytes(positionFile.toPath()), StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(position);
+        } catch (NumberFormatException ex) {
+            throw new IOException("The event stream position file " + positionFile.getPath() + " is corrupt: " + position, ex);
+        }
+    }
+
+    private void writePosition(long position) throws IOException {
+        if (position == savedPosition) {
+            return;
+        }
+
+        // Write to a temp file and move it into place, so a crash never leaves a half-written position.
+        File tempFile = new File(positionFile.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), String.valueOf(position).getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), positionFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        savedPosition = position;
+    }
+
+    /**
+     * @description A changed origin folder: its paired origin folder and the folders below that down to it.
+     */
+    private static class DirtyFolder {
+
+        DirtyFolder(String originRootId, List<BoxFolder.Info> path) {
+            OriginRootId = originRootId;
+            Path = path;
+        }
+
+        final String OriginRootId;
+        final List<BoxFolder.Info> Path;
+
+        String getOriginFolderId() {
+            return Path.isEmpty() ? OriginRootId : Path.get(Path.size() - 1).getID();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder path = new StringBuilder(OriginRootId);
+            for (BoxFolder.Info folder : Path) {
+                path.append('/').append(folder.getName());
+            }
+            return path.toString();
+        }
+    }
+}
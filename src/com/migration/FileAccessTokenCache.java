@@ -0,0 +1,251 @@
+package com.migration;
+
+import com.box.sdk.IAccessTokenCache;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @description An access token cache kept in a file, so runs and sharded worker processes on the same machine reuse a
+ *              valid token instead of each doing its own JWT handshake. The file is encrypted with AES-GCM under a key
+ *              derived from the app's client secret, so it is useless to anyone without the app config. Processes
+ *              coordinate through a lock file. The SDK only reads the cache when a connection is built and writes it
+ *              after each token refresh, so the file is simply re-read every time.
+ *              A file that can't be read (e.g. after the client secret was rotated) is treated as empty and replaced.
+ */
+public class FileAccessTokenCache implements IAccessTokenCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final int SALT_BYTES = 16;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final int KEY_BITS = 256;
+    // The client secret is already a long random string, so a modest iteration count keeps startup fast without
+    // making the key any easier to guess.
+    private static final int KEY_DERIVATION_ITERATIONS = 10000;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final File cacheFile;
+    private final File lockFile;
+    private final char[] secret;
+    private final int maxEntries;
+
+    // Guarded by this.
+    private final LinkedHashMap<String, String> tokensByKey = new LinkedHashMap<String, String>();
+    private byte[] salt;
+    private SecretKey key;
+
+    public FileAccessTokenCache(File cacheFile, String secret) {
+        this(cacheFile, secret, DEFAULT_MAX_ENTRIES);
+    }
+
+    public FileAccessTokenCache(File cacheFile, String secret, int maxEntries) {
+        if (secret == null || secret.isEmpty() || maxEntries < 1) {
+            throw new IllegalArgumentException("The token cache needs a secret and room for at least 1 entry.");
+        }
+
+        this.cacheFile = cacheFile;
+        this.lockFile = new File(cacheFile.getPath() + ".lock");
+        this.secret = secret.toCharArray();
+        this.maxEntries = maxEntries;
+    }
+
+    // The lock is only held for the length of the try, so the body never needs to refer to it.
+    @Override
+    @SuppressWarnings("try")
+    public synchronized String get(String key) {
+        try (FileLock lock = lock(true)) {
+            reload();
+        } catch (IOException ex) {
+            System.out.println("Unable to read the access token cache. Error: " + ex.getMessage());
+        }
+        return tokensByKey.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public synchronized void put(String key, String value) {
+        // Merge with whatever other processes have written, then replace the file, all under the lock.
+        try (FileLock lock = lock(false)) {
+            reload();
+
+            tokensByKey.remove(key);
+            tokensByKey.put(key, value);
+            while (tokensByKey.size() > maxEntries) {
+                tokensByKey.remove(tokensByKey.keySet().iterator().next());
+            }
+
+            write();
+        } catch (IOException ex) {
+            // The token is still good for this process; other processes will just fetch their own.
+            System.out.println("Unable to save the access token cache. Error: " + ex.getMessage());
+            tokensByKey.put(key, value);
+        }
+    }
+
+    private FileLock lock(boolean isShared) throws IOException {
+        FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+        try {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, isShared);
+            return new ClosingFileLock(channel, lock);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void reload() throws IOException {
+        tokensByKey.clear();
+        if (!cacheFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cacheFile.toPath())))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                System.out.println("Ignoring access token cache with an unknown format: " + cacheFile.getPath());
+                return;
+            }
+
+            byte[] fileSalt = readBytes(in, SALT_BYTES);
+            byte[] iv = readBytes(in, IV_BYTES);
+            byte[] ciphertext = readBytes(in, in.readInt());
+
+            DataInputStream tokens = new DataInputStream(new ByteArrayInputStream(decrypt(fileSalt, iv, ciphertext)));
+            int entryCount = tokens.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                tokensByKey.put(tokens.readUTF(), tokens.readUTF());
+            }
+        } catch (GeneralSecurityException | IOException ex) {
+            tokensByKey.clear();
+            System.out.println("Ignoring an access token cache that can't be read: " + ex.getMessage());
+        }
+    }
+
+    private void write() throws IOException {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        DataOutputStream tokens = new DataOutputStream(plaintext);
+        tokens.writeInt(tokensByKey.size());
+        for (Map.Entry<String, String> token : tokensByKey.entrySet()) {
+            tokens.writeUTF(token.getKey());
+            tokens.writeUTF(token.getValue());
+        }
+
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        byte[] ciphertext;
+        try {
+            ciphertext = encrypt(iv, plaintext.toByteArray());
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Unable to encrypt the access token cache.", ex);
+        }
+
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        Files.deleteIfExists(tempFile.toPath());
+        Files.createFile(tempFile.toPath());
+        try {
+            // Only the owner may read the tokens, where the file system supports it.
+            Files.setPosixFilePermissions(tempFile.toPath(), PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system; the encryption still protects the tokens.
+        }
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.write(salt);
+            out.write(iv);
+            out.writeInt(ciphertext.length);
+            out.write(ciphertext);
+        }
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private byte[] encrypt(byte[] iv, byte[] plaintext) throws GeneralSecurityException {
+        if (key == null) {
+            salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            key = deriveKey(salt);
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        return cipher.doFinal(plaintext);
+    }
+
+    private byte[] decrypt(byte[] fileSalt, byte[] iv, byte[] ciphertext) throws GeneralSecurityException {
+        // Deriving the key is the slow part, so only do it again when the file was written with a different salt.
+        if (key == null || !Arrays.equals(salt, fileSalt)) {
+            key = deriveKey(fileSalt);
+            salt = fileSalt;
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        return cipher.doFinal(ciphertext);
+    }
+
+    private SecretKey deriveKey(byte[] keySalt) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        byte[] keyBytes = factory.generateSecret(new PBEKeySpec(secret, keySalt, KEY_DERIVATION_ITERATIONS, KEY_BITS)).getEncoded();
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > in.available()) {
+            throw new IOException("The file is truncated.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @description A file lock that also closes its channel, so it can be used in try-with-resources.
+     */
+    private static class ClosingFileLock extends FileLock {
+
+        private final FileLock lock;
+
+        ClosingFileLock(FileChannel channel, FileLock lock) {
+            super(channel, lock.position(), lock.size(), lock.isShared());
+            this.lock = lock;
+        }
+
+        @Override
+        public boolean isValid() {
+            return lock.isValid();
+        }
+
+        @Override
+        public void release() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel().close();
+            }
+        }
+    }
+}
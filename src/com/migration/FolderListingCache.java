@@ -0,0 +1,219 @@
+package com.migration;
+
+import com.box.sdk.BoxFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description Keeps the children of recently listed folders so we don't pay for the same pagination calls twice.
+ *              Only the id, name and type of each child is requested from Box and kept. Entries expire after a TTL and
+ *              the least recently used folders are evicted once the cache is full. The cache can be saved to disk so
+ *              that re-runs and dry runs can reuse listings from an earlier run.
+ */
+public class FolderListingCache {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_MAX_FOLDERS = 10000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(12);
+
+    private static final String[] LISTING_FIELDS = new String[] {"id", "name", "type"};
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private final int pageSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Listing> listingsByFolderId;
+
+    public FolderListingCache() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_FOLDERS, DEFAULT_TTL_MILLIS);
+    }
+
+    public FolderListingCache(int pageSize, int maxFolders, long ttlMillis) {
+        if (pageSize < 1 || maxFolders < 1 || ttlMillis < 0) {
+            throw new IllegalArgumentException("The page size and max folders must be at least 1 and the TTL can not be negative.");
+        }
+
+        this.pageSize = pageSize;
+        this.ttlMillis = ttlMillis;
+        this.listingsByFolderId = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > maxFolders;
+            }
+        };
+    }
+
+    /**
+     * @description Get the children of the folder, from the cache if we have a fresh copy, otherwise from Box.
+     */
+    public List<Entry> getChildren(BoxFolder folder) {
+        Listing listing;
+        synchronized (this) {
+            listing = listingsByFolderId.get(folder.getID());
+        }
+
+        if (listing != null && !listing.isExpired(ttlMillis)) {
+            return listing.Children;
+        }
+
+        // Two threads can list the same folder at once here. That costs a few extra calls but never returns wrong data,
+        // which is better than holding the lock for the length of a paged listing.
+        listing = new Listing(System.currentTimeMillis(), fetchChildren(folder));
+        synchronized (this) {
+            listingsByFolderId.put(folder.getID(), listing);
+        }
+
+        return listing.Children;
+    }
+
+    /**
+     * @description Forget the listing of a folder. Call this after changing the folder's contents.
+     */
+    public synchronized void invalidate(String folderId) {
+        listingsByFolderId.remove(folderId);
+    }
+
+    public synchronized int size() {
+        return listingsByFolderId.size();
+    }
+
+    private List<Entry> fetchChildren(BoxFolder folder) {
+        List<Entry> children = new ArrayList<Entry>();
+        BoxApiService.forEachChild(folder, pageSize, LISTING_FIELDS, itemInfo -> {
+            String type = itemInfo instanceof BoxFolder.Info ? Entry.FOLDER : Entry.FILE;
+            children.add(new Entry(itemInfo.getID(), itemInfo.getName(), type));
+        });
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * @description Write the unexpired listings to disk. They are written to a temp file that is then moved into place,
+     *              so a crash while saving leaves the previous cache instead of a truncated one.
+     */
+    public void save(File cacheFile) throws IOException {
+        List<Map.Entry<String, Listing>> listings;
+        synchronized (this) {
+            listings = new ArrayList<Map.Entry<String, Listing>>(listingsByFolderId.entrySet());
+        }
+
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+
+            int listingCount = 0;
+            for (Map.Entry<String, Listing> listing : listings) {
+                if (!listing.getValue().isExpired(ttlMillis)) {
+                    listingCount++;
+                }
+            }
+            out.writeInt(listingCount);
+
+            for (Map.Entry<String, Listing> listing : listings) {
+                if (listing.getValue().isExpired(ttlMillis)) {
+                    continue;
+                }
+
+                out.writeUTF(listing.getKey());
+                out.writeLong(listing.getValue().FetchedAt);
+                out.writeInt(listing.getValue().Children.size());
+                for (Entry child : listing.getValue().Children) {
+                    out.writeUTF(child.Id);
+                    out.writeUTF(child.Name);
+                    out.writeUTF(child.Type);
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @description Load listings saved by an earlier run. Listings older than the TTL are dropped.
+     */
+    public void load(File cacheFile) throws IOException {
+        if (!cacheFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                System.out.println("Ignoring folder listing cache with an unknown format: " + cacheFile.getPath());
+                return;
+            }
+
+            int listingCount = in.readInt();
+            int loadedCount = 0;
+            for (int i = 0; i < listingCount; i++) {
+                String folderId = in.readUTF();
+                long fetchedAt = in.readLong();
+                int childCount = in.readInt();
+
+                List<Entry> children = new ArrayList<Entry>(childCount);
+                for (int j = 0; j < childCount; j++) {
+                    children.add(new Entry(in.readUTF(), in.readUTF(), in.readUTF()));
+                }
+
+                Listing listing = new Listing(fetchedAt, Collections.unmodifiableList(children));
+                if (!listing.isExpired(ttlMillis)) {
+                    synchronized (this) {
+                        listingsByFolderId.put(folderId, listing);
+                    }
+                    loadedCount++;
+                }
+            }
+
+            System.out.println("Loaded " + loadedCount + " folder listings from cache " + cacheFile.getPath());
+        }
+    }
+
+    private static class Listing {
+
+        Listing(long fetchedAt, List<Entry> children) {
+            FetchedAt = fetchedAt;
+            Children = children;
+        }
+
+        final long FetchedAt;
+        final List<Entry> Children;
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - FetchedAt > ttlMillis;
+        }
+    }
+
+    /**
+     * @description The id, name and type of one item in a folder.
+     */
+    public static class Entry {
+
+        public static final String FOLDER = "folder";
+        public static final String FILE = "file";
+
+        public Entry(String id, String name, String type) {
+            Id = id;
+            Name = name;
+            Type = type;
+        }
+
+        public final String Id;
+        public final String Name;
+        public final String Type;
+
+        public boolean isFolder() {
+            return FOLDER.equals(Type);
+        }
+    }
+}
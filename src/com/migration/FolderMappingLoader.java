@@ -0,0 +1,217 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxAPIException;
+import com.box.sdk.BoxFolder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * @description Builds migrators from the legacy id mapping CSV (origin folder id in column 1, destination folder id in
+ *              column 2). Rows are streamed, validated and de-duplicated as they are read, and each distinct folder id is
+ *              looked up once on a worker pool while the rest of the file is still being read. The lookups go through
+ *              BoxApiService.call, so they share the rate limit and retries with the rest of the migration.
+ *              Rows that can't be used are written to a reject CSV with the reason, instead of stopping the load.
+ */
+public class FolderMappingLoader {
+
+    public static final int DEFAULT_THREAD_COUNT = 8;
+
+    private static final int ORIGIN_ID_COLUMN = 1;
+    private static final int DESTINATION_ID_COLUMN = 2;
+    private static final int NOT_FOUND = 404;
+
+    private final BoxAPIConnection api;
+    private final int threadCount;
+
+    private int duplicateCount = 0;
+    private int rejectedCount = 0;
+
+    public FolderMappingLoader(BoxAPIConnection api, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        this.api = api;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @description Read the mapping file and return one migrator per valid, distinct origin folder, in file order.
+     * @param rejectFile Where rows that fail validation or lookup are written, with the reason in an extra column.
+     */
+    public List<BoxFileMigrator> load(File mappingFile, File rejectFile) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // Bounds the lookups queued or running, so a huge file doesn't turn into a huge backlog of tasks.
+        Semaphore inFlight = new Semaphore(threadCount * 4);
+        Map<String, CompletableFuture<FolderSnapshot>> lookupsById = new HashMap<String, CompletableFuture<FolderSnapshot>>();
+        Map<String, String> destinationIdByOriginId = new HashMap<String, String>();
+        List<MappingRow> rows = new ArrayList<MappingRow>();
+        List<BoxFileMigrator> migrators = new ArrayList<BoxFileMigrator>();
+
+        try (CSVReader reader = new CSVReader(new FileReader(mappingFile, StandardCharsets.UTF_8));
+             CSVWriter rejectWriter = new CSVWriter(new FileWriter(rejectFile, StandardCharsets.UTF_8))) {
+            String[] header = reader.readNext();
+            if (header != null) {
+                rejectWriter.writeNext(withReason(header, "Reject Reason"));
+            }
+
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                String reason = validate(row);
+                if (reason != null) {
+                    reject(rejectWriter, row, reason);
+                    continue;
+                }
+
+                String originId = row[ORIGIN_ID_COLUMN].trim();
+                String destinationId = row.length > DESTINATION_ID_COLUMN ? row[DESTINATION_ID_COLUMN].trim() : "";
+
+                String knownDestinationId = destinationIdByOriginId.putIfAbsent(originId, destinationId);
+                if (knownDestinationId != null) {
+                    if (knownDestinationId.equals(destinationId)) {
+                        duplicateCount++;
+                    } else {
+                        reject(rejectWriter, row, "Origin folder is already mapped to destination " + knownDestinationId);
+                    }
+                    continue;
+                }
+
+                MappingRow mappingRow = new MappingRow(row);
+                mappingRow.Origin = lookup(originId, lookupsById, executor, inFlight);
+                mappingRow.Destination = destinationId.isEmpty() ? null : lookup(destinationId, lookupsById, executor, inFlight);
+                rows.add(mappingRow);
+            }
+
+            for (MappingRow mappingRow : rows) {
+                try {
+                    FolderSnapshot originInfo = mappingRow.Origin.join();
+                    FolderSnapshot destinationInfo = mappingRow.Destination == null ? null : mappingRow.Destination.join();
+                    migrators.add(new BoxFileMigrator(api, originInfo, destinationInfo));
+                } catch (CompletionException ex) {
+                    reject(rejectWriter, mappingRow.Values, getLookupFailure(ex.getCause()));
+                }
+            }
+        } catch (CsvValidationException ex) {
+            throw new IOException("Unable to read the folder mapping file " + mappingFile.getPath() + ": " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving the folder mapping file.", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.println("Loaded " + migrators.size() + " folder mappings from " + mappingFile.getPath() + " using "
+                + lookupsById.size() + " lookups. Duplicates skipped: " + duplicateCount + ". Rejected: " + rejectedCount
+                + (rejectedCount > 0 ? " (see " + rejectFile.getPath() + ")" : ""));
+        return migrators;
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return Why the row can't be used, or null if it is valid.
+     */
+    private static String validate(String[] row) {
+        if (row.length <= ORIGIN_ID_COLUMN) {
+            return "Missing the origin folder id column";
+        }
+
+        String originId = row[ORIGIN_ID_COLUMN].trim();
+        if (originId.isEmpty()) {
+            return "Missing the origin folder id";
+        }
+        if (!isFolderId(originId)) {
+            return "Origin folder id is not a number: " + originId;
+        }
+
+        // A blank destination is allowed; the folder is logged as having no match.
+        String destinationId = row.length > DESTINATION_ID_COLUMN ? row[DESTINATION_ID_COLUMN].trim() : "";
+        if (!destinationId.isEmpty() && !isFolderId(destinationId)) {
+            return "Destination folder id is not a number: " + destinationId;
+        }
+        if (originId.equals(destinationId)) {
+            return "Origin and destination are the same folder";
+        }
+        return null;
+    }
+
+    private static boolean isFolderId(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (!Character.isDigit(id.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CompletableFuture<FolderSnapshot> lookup(String folderId, Map<String, CompletableFuture<FolderSnapshot>> lookupsById,
+                                                     ExecutorService executor, Semaphore inFlight) throws InterruptedException {
+        CompletableFuture<FolderSnapshot> lookup = lookupsById.get(folderId);
+        if (lookup != null) {
+            return lookup;
+        }
+
+        inFlight.acquire();
+        lookup = CompletableFuture.supplyAsync(() -> {
+            try {
+                return FolderSnapshot.fetch(new BoxFolder(api, folderId));
+            } finally {
+                inFlight.release();
+            }
+        }, executor);
+        lookupsById.put(folderId, lookup);
+        return lookup;
+    }
+
+    private static String getLookupFailure(Throwable cause) {
+        if (cause instanceof BoxAPIException && ((BoxAPIException)cause).getResponseCode() == NOT_FOUND) {
+            return "Folder not found";
+        }
+        return "Unable to look up folder: " + cause.getMessage();
+    }
+
+    private void reject(CSVWriter rejectWriter, String[] row, String reason) {
+        rejectedCount++;
+        rejectWriter.writeNext(withReason(row, reason));
+    }
+
+    private static String[] withReason(String[] row, String reason) {
+        String[] rejectRow = Arrays.copyOf(row, row.length + 1);
+        rejectRow[row.length] = reason;
+        return rejectRow;
+    }
+
+    private static class MappingRow {
+
+        MappingRow(String[] values) {
+            Values = values;
+        }
+
+        final String[] Values;
+        CompletableFuture<FolderSnapshot> Origin;
+        CompletableFuture<FolderSnapshot> Destination;
+    }
+}
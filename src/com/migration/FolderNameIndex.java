@@ -0,0 +1,344 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * @description A read-only map from child folder name to folder, for directories too big to hold as a
+ *              HashMap<String, BoxFolder>. Each child is one packed record (the id as a long and the name as UTF-8
+ *              bytes), and names are found through an open-addressing table of record offsets, so a child costs
+ *              about 20 bytes plus its name instead of several objects. Once the records outgrow the heap budget they
+ *              are spilled to a temporary file and memory-mapped, leaving only the table on the heap. BoxFolder handles
+ *              are only created when a value is asked for. As FolderNameMatcher candidates, entries are known by their
+ *              record offsets, so the matcher reads names from the records instead of keeping its own copies.
+ */
+public class FolderNameIndex extends AbstractMap<String, BoxFolder> implements FolderNameMatcher.Candidates<BoxFolder> {
+
+    public static final long DEFAULT_HEAP_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    // A record is the id (8 bytes), the name length (2 bytes) and the name.
+    private static final int RECORD_HEADER_BYTES = 10;
+    private static final int EMPTY_SLOT = 0;
+
+    private final BoxAPIConnection api;
+    private final ByteBuffer records;
+    // Record offset + 1 for each entry, or EMPTY_SLOT. The length is a power of two.
+    private final int[] slots;
+    private final int size;
+    private final boolean isMapped;
+
+    private FolderNameIndex(BoxAPIConnection api, ByteBuffer records, int recordCount, boolean isMapped) {
+        this.api = api;
+        this.records = records;
+        this.isMapped = isMapped;
+        this.slots = new int[Integer.highestOneBit(Math.max(2, recordCount * 2 - 1)) << 1];
+
+        int entryCount = 0;
+        int offset = 0;
+        for (int i = 0; i < recordCount; i++) {
+            int nameLength = records.getShort(offset + 8) & 0xffff;
+            int slot = findSlot(records, offset + RECORD_HEADER_BYTES, nameLength);
+            if (slots[slot] == EMPTY_SLOT) {
+                slots[slot] = offset + 1;
+                entryCount++;
+            }
+            // A repeated name keeps the first folder, like the rest of the migration does.
+            offset += RECORD_HEADER_BYTES + nameLength;
+        }
+        this.size = entryCount;
+    }
+
+    /**
+     * @description Look up a folder id without creating a BoxFolder.
+     * @return The id, or -1 if there is no child with that name.
+     */
+    public long getId(String name) {
+        int offset = findRecord(name);
+        return offset < 0 ? -1 : records.getLong(offset);
+    }
+
+    @Override
+    public BoxFolder get(Object name) {
+        if (!(name instanceof String)) {
+            return null;
+        }
+
+        int offset = findRecord((String)name);
+        return offset < 0 ? null : new BoxFolder(api, Long.toString(records.getLong(offset)));
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return name instanceof String && findRecord((String)name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEachCandidate(IntConsumer action) {
+        for (int slot : slots) {
+            if (slot != EMPTY_SLOT) {
+                action.accept(slot - 1);
+            }
+        }
+    }
+
+    @Override
+    public String getCandidateName(int offset) {
+        return readName(offset);
+    }
+
+    @Override
+    public BoxFolder getCandidateValue(int offset) {
+        return new BoxFolder(api, Long.toString(records.getLong(offset)));
+    }
+
+    @Override
+    public int findCandidate(String name) {
+        return findRecord(name);
+    }
+
+    /**
+     * @description Whether the records were spilled to a memory-mapped file.
+     */
+    public boolean isMapped() {
+        return isMapped;
+    }
+
+    /**
+     * @description Roughly how much heap the index holds, not counting mapped records.
+     */
+    public long getHeapBytes() {
+        return (long)slots.length * Integer.BYTES + (isMapped ? 0 : records.capacity());
+    }
+
+    @Override
+    public Set<Map.Entry<String, BoxFolder>> entrySet() {
+        return new AbstractSet<Map.Entry<String, BoxFolder>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, BoxFolder>> iterator() {
+                return new Iterator<Map.Entry<String, BoxFolder>>() {
+                    private int nextSlot = advance(0);
+
+                    private int advance(int slot) {
+                        while (slot < slots.length && slots[slot] == EMPTY_SLOT) {
+                            slot++;
+                        }
+                        return slot;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return nextSlot < slots.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, BoxFolder> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        int offset = slots[nextSlot] - 1;
+                        nextSlot = advance(nextSlot + 1);
+                        long id = records.getLong(offset);
+                        // The folder handle is only built if the caller asks for the value.
+                        return new AbstractMap.SimpleImmutableEntry<String, BoxFolder>(readName(offset), null) {
+                            @Override
+                            public BoxFolder getValue() {
+                                return new BoxFolder(api, Long.toString(id));
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    private int findRecord(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int slot = hash(nameBytes) & mask; slots[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            int offset = slots[slot] - 1;
+            if (isNameAt(records, offset, nameBytes)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The slot holding a record with the same name as the one at nameOffset, or the empty slot where it goes.
+     */
+    private int findSlot(ByteBuffer buffer, int nameOffset, int nameLength) {
+        byte[] nameBytes = readBytes(buffer, nameOffset, nameLength);
+
+        int mask = slots.length - 1;
+        int slot = hash(nameBytes) & mask;
+        while (slots[slot] != EMPTY_SLOT && !isNameAt(buffer, slots[slot] - 1, nameBytes)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean isNameAt(ByteBuffer buffer, int offset, byte[] nameBytes) {
+        int nameLength = buffer.getShort(offset + 8) & 0xffff;
+        if (nameLength != nameBytes.length) {
+            return false;
+        }
+
+        int nameOffset = offset + RECORD_HEADER_BYTES;
+        for (int i = 0; i < nameLength; i++) {
+            if (buffer.get(nameOffset + i) != nameBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readName(int offset) {
+        return new String(readBytes(records, offset + RECORD_HEADER_BYTES, records.getShort(offset + 8) & 0xffff), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int offset, int length) {
+        // Read through a duplicate so the shared buffer's position is never touched by concurrent readers.
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = Arrays.hashCode(bytes);
+        // Spread the bits so a power-of-two table uses all of them.
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @description Collects children one at a time, in memory until the heap budget is used up and in a temporary
+     *              file after that.
+     */
+    public static class Builder {
+
+        private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+        private final long heapBudgetBytes;
+        private byte[] buffer = new byte[INITIAL_BUFFER_BYTES];
+        private int bufferedBytes = 0;
+        private long spilledBytes = 0;
+        private int recordCount = 0;
+        private File spillFile;
+        private FileChannel spillChannel;
+
+        public Builder() {
+            this(DEFAULT_HEAP_BUDGET_BYTES);
+        }
+
+        public Builder(long heapBudgetBytes) {
+            if (heapBudgetBytes < INITIAL_BUFFER_BYTES) {
+                throw new IllegalArgumentException("The heap budget must be at least " + INITIAL_BUFFER_BYTES + " bytes.");
+            }
+            this.heapBudgetBytes = heapBudgetBytes;
+        }
+
+        public void add(String name, String folderId) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 0xffff) {
+                throw new IllegalArgumentException("The folder name is too long: " + name);
+            }
+
+            int recordBytes = RECORD_HEADER_BYTES + nameBytes.length;
+            if (spilledBytes + bufferedBytes + recordBytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The folder name index can't hold more than 2 GB of names.");
+            }
+
+            try {
+                ensureCapacity(recordBytes);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to spill the folder name index to disk.", ex);
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(buffer, bufferedBytes, recordBytes);
+            record.putLong(Long.parseLong(folderId));
+            record.putShort((short)nameBytes.length);
+            record.put(nameBytes);
+            bufferedBytes += recordBytes;
+            recordCount++;
+        }
+
+        private void ensureCapacity(int recordBytes) throws IOException {
+            if (bufferedBytes + recordBytes <= buffer.length) {
+                return;
+            }
+
+            if (spillChannel == null && (long)buffer.length * 2 <= heapBudgetBytes) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                return;
+            }
+
+            // Over budget: from here on the buffer is only a write buffer for the spill file.
+            if (spillChannel == null) {
+                spillFile = File.createTempFile("folder-name-index", ".bin");
+                spillFile.deleteOnExit();
+                spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            flush();
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer pending = ByteBuffer.wrap(buffer, 0, bufferedBytes);
+            while (pending.hasRemaining()) {
+                spillChannel.write(pending);
+            }
+            spilledBytes += bufferedBytes;
+            bufferedBytes = 0;
+        }
+
+        public FolderNameIndex build(BoxAPIConnection api) {
+            if (spillChannel == null) {
+                return new FolderNameIndex(api, ByteBuffer.wrap(Arrays.copyOf(buffer, bufferedBytes)), recordCount, false);
+            }
+
+            try {
+                flush();
+                ByteBuffer mapped = spillChannel.map(FileChannel.MapMode.READ_ONLY, 0, spilledBytes);
+                spillChannel.close();
+                buffer = null;
+                try {
+                    // The mapping stays valid after the file is gone, so remove it now where the OS allows it.
+                    Files.deleteIfExists(spillFile.toPath());
+                } catch (IOException ex) {
+                    // Left for deleteOnExit.
+                }
+                return new FolderNameIndex(api, mapped, recordCount, true);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to map the folder name index.", ex);
+            }
+        }
+    }
+}
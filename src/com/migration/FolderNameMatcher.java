@@ -0,0 +1,745 @@
+package com.migration;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * @description Pairs origin folder names with destination folder names when they are not spelled exactly the same.
+ *              Names are first normalized (case, whitespace, punctuation, accents and suffixes like "Inc."), and
+ *              anything still unmatched is looked up in a trigram index. A candidate's confidence is the better of the
+ *              Dice coefficient of the two names' trigrams, which forgives reordered words, and the share of characters
+ *              left unchanged by the fewest typos (edits, including swapped neighbours) that turn one name into the
+ *              other. Each lookup only counts candidates of a plausible length that share enough of the name's rarest
+ *              trigrams to reach the minimum confidence, so matching n names against m destinations is far cheaper than
+ *              comparing every pair.
+ *              The matcher never copies the destination names. It keeps each candidate's id in the Candidates source
+ *              (e.g. a record offset in FolderNameIndex) in int arrays and reads a name back only when it needs one, so
+ *              its heap use is a few ints per name plus the trigram postings. Neither is built until a name doesn't
+ *              match a destination exactly, which FolderNameIndex answers without them.
+ */
+public class FolderNameMatcher<T> {
+
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.85;
+
+    // Confidence given to names that are only equal after normalization.
+    private static final double NORMALIZED_MATCH_CONFIDENCE = 0.95;
+    private static final int EMPTY_SLOT = 0;
+    // Names are only matched on typos when they differ by this many at most, however long they are.
+    private static final int MAX_TYPOS = 2;
+    // A typo changes at most the three trigrams that overlap it, and swapping two neighbours at most four.
+    private static final int GRAMS_PER_TYPO = 4;
+    // A binary search of a long posting list misses the cache at most of its steps, while counting the list reads it in
+    // order. Roughly how many postings can be counted in the time of one of those steps.
+    private static final int PROBE_TO_SCAN_COST = 4;
+    // Keeps bounds computed from the confidence from rounding the wrong way, e.g. 0.15 * 20 to 2.9999999999999996.
+    private static final double EPSILON = 1e-9;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> IGNORED_SUFFIXES = new LinkedHashSet<String>(Arrays.asList(
+            "inc", "incorporated", "llc", "ltd", "limited", "corp", "corporation", "co", "company", "plc"));
+
+    private final double minConfidence;
+    private final Candidates<T> candidates;
+    // Everything below is built on the first lookup that doesn't match a name exactly, so a migration whose names all
+    // match never pays for it.
+    private volatile boolean indexed;
+    private int candidateCount;
+    // Candidates are numbered in order of trigram count, and this is indexed by trigram count: the first candidate
+    // with that many, or the first with more.
+    private int[] gramCountStarts;
+    // Indexed by candidate number: the candidate's id in the source, its normalized name's hash and length and its
+    // trigram count.
+    private int[] candidateIds;
+    private int[] normalizedHashes;
+    private int[] normalizedLengths;
+    private int[] candidateGramCounts;
+    // Open-addressing table of candidate number + 1 by normalized name, holding the first candidate for each name.
+    private int[] normalizedSlots;
+    // Set for the first candidate of a normalized name that more than one candidate shares.
+    private final BitSet ambiguousNormalizedNames = new BitSet();
+    private final GramTable gramIds = new GramTable();
+    // Indexed by gram id: the numbers of the candidates with that trigram, in ascending order.
+    private int[][] postingsByGram;
+
+    private ThreadLocal<char[]> sharedGramCounts;
+
+    public FolderNameMatcher(Candidates<T> candidates) {
+        this(candidates, DEFAULT_MIN_CONFIDENCE);
+    }
+
+    public FolderNameMatcher(Candidates<T> candidates, double minConfidence) {
+        this.minConfidence = minConfidence;
+        this.candidates = candidates;
+    }
+
+    /**
+     * @description Normalize every candidate's name and index its trigrams, unless another lookup already has.
+     */
+    private synchronized void buildIndex() {
+        if (indexed) {
+            return;
+        }
+
+        int size = candidates.size();
+        this.candidateIds = new int[size];
+        this.normalizedHashes = new int[size];
+        this.normalizedLengths = new int[size];
+        this.candidateGramCounts = new int[size];
+        this.normalizedSlots = new int[Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1];
+
+        // One pass over the source: each name is read and normalized once, and its trigrams go straight onto the
+        // posting lists. Candidates are numbered in the order they're visited until they're renumbered below.
+        PostingsBuilder postings = new PostingsBuilder();
+        int[] count = new int[1];
+        candidates.forEachCandidate(id -> {
+            String normalizedName = normalize(candidates.getCandidateName(id));
+            if (normalizedName.isEmpty()) {
+                return;
+            }
+
+            int index = count[0]++;
+            candidateIds[index] = id;
+            normalizedHashes[index] = normalizedName.hashCode();
+            normalizedLengths[index] = normalizedName.length();
+
+            String padded = " " + normalizedName + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                if (postings.add(gramIds.add(getGramKey(padded, i)), index)) {
+                    candidateGramCounts[index]++;
+                }
+            }
+
+            int slot = findNormalizedSlot(normalizedName, normalizedHashes[index]);
+            if (normalizedSlots[slot] == EMPTY_SLOT) {
+                normalizedSlots[slot] = index + 1;
+            } else {
+                // Two destinations that normalize the same can't be told apart, so neither is picked.
+                ambiguousNormalizedNames.set(normalizedSlots[slot] - 1);
+            }
+        });
+
+        this.candidateCount = count[0];
+        this.postingsByGram = postings.build(gramIds.size());
+        this.gramCountStarts = renumberByGramCount();
+        sharedGramCounts = ThreadLocal.withInitial(() -> new char[candidateCount]);
+        indexed = true;
+    }
+
+    /**
+     * @description Renumber the candidates in order of trigram count, so the candidates of a plausible size for a lookup
+     *              are one run of every posting list, and sort the posting lists again.
+     * @return The first candidate number with each trigram count, and the candidate count after the largest.
+     */
+    private int[] renumberByGramCount() {
+        int maxGramCount = 0;
+        for (int index = 0; index < candidateCount; index++) {
+            maxGramCount = Math.max(maxGramCount, candidateGramCounts[index]);
+        }
+
+        int[] starts = new int[maxGramCount + 2];
+        for (int index = 0; index < candidateCount; index++) {
+            starts[candidateGramCounts[index] + 1]++;
+        }
+        for (int gramCount = 1; gramCount < starts.length; gramCount++) {
+            starts[gramCount] += starts[gramCount - 1];
+        }
+
+        int[] nextIndexByGramCount = Arrays.copyOf(starts, starts.length);
+        int[] newIndexes = new int[candidateCount];
+        for (int index = 0; index < candidateCount; index++) {
+            newIndexes[index] = nextIndexByGramCount[candidateGramCounts[index]]++;
+        }
+
+        for (int[] values : new int[][] {candidateIds, normalizedHashes, normalizedLengths, candidateGramCounts}) {
+            int[] oldValues = Arrays.copyOf(values, candidateCount);
+            for (int index = 0; index < candidateCount; index++) {
+                values[newIndexes[index]] = oldValues[index];
+            }
+        }
+
+        for (int slot = 0; slot < normalizedSlots.length; slot++) {
+            if (normalizedSlots[slot] != EMPTY_SLOT) {
+                normalizedSlots[slot] = newIndexes[normalizedSlots[slot] - 1] + 1;
+            }
+        }
+
+        BitSet ambiguous = (BitSet)ambiguousNormalizedNames.clone();
+        ambiguousNormalizedNames.clear();
+        for (int index = ambiguous.nextSetBit(0); index >= 0; index = ambiguous.nextSetBit(index + 1)) {
+            ambiguousNormalizedNames.set(newIndexes[index]);
+        }
+
+        for (int[] postings : postingsByGram) {
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = newIndexes[postings[i]];
+            }
+            Arrays.sort(postings);
+        }
+        return starts;
+    }
+
+    /**
+     * @return The slot holding the candidate with this normalized name, or the empty slot where it goes.
+     */
+    private int findNormalizedSlot(String normalizedName, int hash) {
+        int mask = normalizedSlots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (normalizedSlots[slot] != EMPTY_SLOT) {
+            int index = normalizedSlots[slot] - 1;
+            // The hashes and lengths rule out almost every other name without reading it back from the source.
+            if (normalizedHashes[index] == hash && normalizedLengths[index] == normalizedName.length()
+                    && normalize(candidates.getCandidateName(candidateIds[index])).equals(normalizedName)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @description Find the best destination for the name, or null if nothing is close enough.
+     */
+    public Match<T> match(String name) {
+        int exactId = candidates.findCandidate(name);
+        if (exactId >= 0) {
+            return new Match<T>(candidates.getCandidateValue(exactId), name, 1.0);
+        }
+        if (!indexed) {
+            buildIndex();
+        }
+
+        String normalizedName = normalize(name);
+        if (normalizedName.isEmpty()) {
+            return null;
+        }
+
+        int normalizedSlot = normalizedSlots[findNormalizedSlot(normalizedName, normalizedName.hashCode())];
+        if (normalizedSlot != EMPTY_SLOT) {
+            if (ambiguousNormalizedNames.get(normalizedSlot - 1)) {
+                System.out.println("More than one destination folder matches \"" + name + "\". Leaving it for review.");
+                return null;
+            }
+
+            int id = candidateIds[normalizedSlot - 1];
+            return new Match<T>(candidates.getCandidateValue(id), candidates.getCandidateName(id), NORMALIZED_MATCH_CONFIDENCE);
+        }
+
+        return findApproximateMatch(name, normalizedName);
+    }
+
+    private Match<T> findApproximateMatch(String name, String normalizedName) {
+        String padded = " " + normalizedName + " ";
+        long[] gramKeys = new long[padded.length() - 2];
+        int[][] postingLists = new int[gramKeys.length][];
+        int gramCount = 0;
+        int knownGramCount = 0;
+        for (int i = 0; i < gramKeys.length; i++) {
+            long gramKey = getGramKey(padded, i);
+            if (indexOf(gramKeys, gramCount, gramKey) >= 0) {
+                continue;
+            }
+
+            gramKeys[gramCount++] = gramKey;
+            int gramId = gramIds.get(gramKey);
+            if (gramId >= 0) {
+                postingLists[knownGramCount++] = postingsByGram[gramId];
+            }
+        }
+
+        // For a Dice score of at least t, a candidate with |c| trigrams shares at least t * (|q| + |c|) / 2 of the
+        // query's trigrams, so it has at most (2 - t) * |q| / t of them. For a typo score of at least t, it has between
+        // t * |q| and |q| / t characters and, as each of its k typos changes at most GRAMS_PER_TYPO trigrams, shares at
+        // least |q| - GRAMS_PER_TYPO * k of them. Those minimums are worked out once per lookup, by trigram count and
+        // by length.
+        int length = normalizedName.length();
+        int minLength = (int)Math.ceil(minConfidence * length - EPSILON);
+        int[] minSharedByGramCount = new int[(int)Math.floor((2 - minConfidence) * gramCount / minConfidence + EPSILON) + 1];
+        int[] minSharedByLength = new int[(int)Math.floor(length / minConfidence + EPSILON) - minLength + 1];
+        int minShared = Integer.MAX_VALUE;
+        for (int candidateGramCount = 0; candidateGramCount < minSharedByGramCount.length; candidateGramCount++) {
+            int minSharedByDice = Math.max(1, (int)Math.ceil(minConfidence * (gramCount + candidateGramCount) / 2 - EPSILON));
+            // A candidate can't share more trigrams than it has, so too few of them rules out the Dice score.
+            minSharedByGramCount[candidateGramCount] = minSharedByDice <= candidateGramCount ? minSharedByDice : Integer.MAX_VALUE;
+            minShared = Math.min(minShared, minSharedByGramCount[candidateGramCount]);
+        }
+        for (int i = 0; i < minSharedByLength.length; i++) {
+            minSharedByLength[i] = Math.max(1, gramCount - GRAMS_PER_TYPO * getMaxEdits(Math.max(length, minLength + i)));
+            minShared = Math.min(minShared, minSharedByLength[i]);
+        }
+
+        // So a candidate must appear in one of the (|q| - minShared + 1) rarest trigrams. Trigrams no candidate has are
+        // the rarest of all, so only the rest of that prefix (after sorting, below) is scanned to collect candidates.
+        int prefixLength = gramCount - minShared + 1 - (gramCount - knownGramCount);
+        if (prefixLength < 1) {
+            return null;
+        }
+
+        // Sharing minShared trigrams takes at least that many, and neither score allows more than the larger of the Dice
+        // limit and the longest name within the typo limit. As candidates are numbered by trigram count, the candidates
+        // of a plausible size are one run of each posting list, and only that run is read.
+        int maxLength = minLength + minSharedByLength.length - 1;
+        int bandStart = getFirstWithGramCount(minShared);
+        int bandEnd = getFirstWithGramCount(Math.max(minSharedByGramCount.length - 1, maxLength) + 1);
+        int[] runStarts = new int[knownGramCount];
+        int[] runEnds = new int[knownGramCount];
+        // Rarest first within the band: each run's length and list's position packed into a long, so they sort without
+        // a comparator.
+        long[] listOrder = new long[knownGramCount];
+        for (int i = 0; i < knownGramCount; i++) {
+            int runStart = getInsertionPoint(postingLists[i], 0, postingLists[i].length, bandStart);
+            int runEnd = getInsertionPoint(postingLists[i], runStart, postingLists[i].length, bandEnd);
+            listOrder[i] = ((long)(runEnd - runStart) << 32) | i;
+            runStarts[i] = runStart;
+            runEnds[i] = runEnd;
+        }
+        Arrays.sort(listOrder);
+        int[][] sortedLists = new int[knownGramCount][];
+        int[] sortedRunStarts = new int[knownGramCount];
+        int[] sortedRunEnds = new int[knownGramCount];
+        for (int i = 0; i < knownGramCount; i++) {
+            int position = (int)listOrder[i];
+            sortedLists[i] = postingLists[position];
+            sortedRunStarts[i] = runStarts[position];
+            sortedRunEnds[i] = runEnds[position];
+        }
+        postingLists = sortedLists;
+        runStarts = sortedRunStarts;
+        runEnds = sortedRunEnds;
+
+        char[] sharedCounts = sharedGramCounts.get();
+        int[] touched = new int[16];
+        int[] touchedMinShared = new int[16];
+        int touchedCount = 0;
+        for (int i = 0; i < prefixLength; i++) {
+            int[] postings = postingLists[i];
+            for (int p = runStarts[i]; p < runEnds[i]; p++) {
+                int index = postings[p];
+                if (sharedCounts[index] == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                        touchedMinShared = Arrays.copyOf(touchedMinShared, touchedCount * 2);
+                    }
+
+                    int candidateGramCount = candidateGramCounts[index];
+                    int lengthOffset = normalizedLengths[index] - minLength;
+                    int candidateMinShared = candidateGramCount < minSharedByGramCount.length ? minSharedByGramCount[candidateGramCount] : Integer.MAX_VALUE;
+                    if (lengthOffset >= 0 && lengthOffset < minSharedByLength.length) {
+                        candidateMinShared = Math.min(candidateMinShared, minSharedByLength[lengthOffset]);
+                    }
+                    touched[touchedCount] = index;
+                    touchedMinShared[touchedCount++] = candidateMinShared;
+                }
+                sharedCounts[index]++;
+            }
+        }
+
+        // Each further trigram can add at most one to a count. Drop the candidates that can't reach their minimum any
+        // more, and keep counting the next rarest trigram while that's cheaper than a binary search of its posting list
+        // for every candidate left. Names built from common words share many trigrams, so this is where most candidates
+        // drop out.
+        int scannedCount = prefixLength;
+        touchedCount = prune(touched, touchedMinShared, touchedCount, sharedCounts, knownGramCount - scannedCount);
+        while (scannedCount < knownGramCount && touchedCount > 0) {
+            int[] postings = postingLists[scannedCount];
+            int runLength = runEnds[scannedCount] - runStarts[scannedCount];
+            if ((long)touchedCount * (32 - Integer.numberOfLeadingZeros(runLength)) * PROBE_TO_SCAN_COST < runLength) {
+                break;
+            }
+
+            for (int p = runStarts[scannedCount]; p < runEnds[scannedCount]; p++) {
+                int index = postings[p];
+                if (sharedCounts[index] > 0) {
+                    sharedCounts[index]++;
+                }
+            }
+            scannedCount++;
+            touchedCount = prune(touched, touchedMinShared, touchedCount, sharedCounts, knownGramCount - scannedCount);
+        }
+
+        int bestIndex = -1;
+        double bestScore = 0;
+        boolean isTied = false;
+
+        for (int t = 0; t < touchedCount; t++) {
+            int index = touched[t];
+            int shared = sharedCounts[index];
+            sharedCounts[index] = 0;
+
+            // The common trigrams are only probed, and only until the misses rule the candidate out.
+            int allowedMisses = shared + knownGramCount - scannedCount - touchedMinShared[t];
+            for (int i = scannedCount; i < knownGramCount && allowedMisses >= 0; i++) {
+                if (Arrays.binarySearch(postingLists[i], runStarts[i], runEnds[i], index) >= 0) {
+                    shared++;
+                } else {
+                    allowedMisses--;
+                }
+            }
+            if (allowedMisses < 0) {
+                continue;
+            }
+
+            double score = 2.0 * shared / (gramCount + candidateGramCounts[index]);
+            int candidateLength = normalizedLengths[index];
+            int longerLength = Math.max(length, candidateLength);
+            // Each typo accounts for at most GRAMS_PER_TYPO of the missing trigrams and one character of the difference in
+            // length, which bounds the typo score before any characters are compared.
+            int minEdits = Math.max(Math.abs(length - candidateLength), (gramCount - shared + GRAMS_PER_TYPO - 1) / GRAMS_PER_TYPO);
+            int maxEdits = getMaxEdits(longerLength);
+            double maxTypoScore = 1 - (double)minEdits / longerLength;
+            if (minEdits <= maxEdits && maxTypoScore > score && maxTypoScore >= bestScore) {
+                int edits = getEditDistance(normalizedName, normalize(candidates.getCandidateName(candidateIds[index])), maxEdits);
+                if (edits <= maxEdits) {
+                    score = Math.max(score, 1 - (double)edits / longerLength);
+                }
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestIndex = index;
+                isTied = false;
+            } else if (score == bestScore) {
+                isTied = true;
+            }
+        }
+
+        if (bestIndex < 0 || bestScore < minConfidence) {
+            return null;
+        }
+
+        // A tie means we can't tell which account was meant. Leave it for a person to resolve.
+        if (isTied) {
+            System.out.println("More than one destination folder matches \"" + name + "\". Leaving it for review.");
+            return null;
+        }
+
+        int id = candidateIds[bestIndex];
+        return new Match<T>(candidates.getCandidateValue(id), candidates.getCandidateName(id), bestScore);
+    }
+
+    private int getFirstWithGramCount(int gramCount) {
+        return gramCount < gramCountStarts.length ? gramCountStarts[gramCount] : candidateCount;
+    }
+
+    /**
+     * @return Where the value is, or would be inserted, in the sorted range [from, to) of the array.
+     */
+    private static int getInsertionPoint(int[] values, int from, int to, int value) {
+        int position = Arrays.binarySearch(values, from, to, value);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * @return How many candidates are left at the front of touched after dropping those that can't reach their minimum
+     *         even if they share every one of the remaining trigrams. A dropped candidate's count goes back to 0.
+     */
+    private static int prune(int[] touched, int[] touchedMinShared, int touchedCount, char[] sharedCounts, int remainingGramCount) {
+        int keptCount = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int index = touched[t];
+            if (sharedCounts[index] + remainingGramCount >= touchedMinShared[t]) {
+                touched[keptCount] = index;
+                touchedMinShared[keptCount++] = touchedMinShared[t];
+            } else {
+                sharedCounts[index] = 0;
+            }
+        }
+        return keptCount;
+    }
+
+    /**
+     * @return The most typos two names can differ by, when the longer has this many characters, and still reach the
+     *         minimum confidence.
+     */
+    private int getMaxEdits(int longerLength) {
+        return Math.min(MAX_TYPOS, (int)Math.floor((1 - minConfidence) * longerLength + EPSILON));
+    }
+
+    /**
+     * @description Lower case the name, strip accents and punctuation, collapse whitespace and drop trailing company
+     *              suffixes, so "Acme, Inc." and "ACME inc" compare equal.
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return normalizeUnicode(name);
+            }
+        }
+
+        // Plain ASCII has no accents to strip, so it's done in one pass without the regular expressions. Almost every
+        // name takes this path.
+        StringBuilder normalized = new StringBuilder(name.length());
+        boolean isWordEnded = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '&') {
+                appendWord(normalized, "and");
+                isWordEnded = true;
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                appendChar(normalized, c, isWordEnded);
+                isWordEnded = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                appendChar(normalized, (char)(c + ('a' - 'A')), isWordEnded);
+                isWordEnded = false;
+            } else {
+                isWordEnded = true;
+            }
+        }
+
+        int lastSpace = normalized.lastIndexOf(" ");
+        while (lastSpace > 0 && IGNORED_SUFFIXES.contains(normalized.substring(lastSpace + 1))) {
+            normalized.setLength(lastSpace);
+            lastSpace = normalized.lastIndexOf(" ");
+        }
+        return normalized.toString();
+    }
+
+    private static void appendWord(StringBuilder normalized, String word) {
+        if (normalized.length() > 0) {
+            normalized.append(' ');
+        }
+        normalized.append(word);
+    }
+
+    private static void appendChar(StringBuilder normalized, char c, boolean isWordStart) {
+        if (isWordStart && normalized.length() > 0) {
+            normalized.append(' ');
+        }
+        normalized.append(c);
+    }
+
+    private static String normalizeUnicode(String name) {
+        String normalized = Normalizer.normalize(name, Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("");
+        normalized = normalized.toLowerCase(Locale.ROOT).replace("&", " and ");
+        normalized = NON_ALPHANUMERIC.matcher(normalized).replaceAll(" ").trim();
+
+        String[] words = normalized.split(" ");
+        int wordCount = words.length;
+        while (wordCount > 1 && IGNORED_SUFFIXES.contains(words[wordCount - 1])) {
+            wordCount--;
+        }
+
+        return String.join(" ", Arrays.copyOf(words, wordCount));
+    }
+
+    /**
+     * @return The trigram starting at this index, its three chars packed into a long.
+     */
+    private static long getGramKey(String padded, int index) {
+        return ((long)padded.charAt(index) << 32) | ((long)padded.charAt(index + 1) << 16) | padded.charAt(index + 2);
+    }
+
+    private static int indexOf(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The fewest insertions, deletions, substitutions and swaps of neighbouring characters that turn one name
+     *         into the other, or maxEdits + 1 if it takes more than maxEdits.
+     */
+    private static int getEditDistance(String left, String right, int maxEdits) {
+        if (Math.abs(left.length() - right.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+
+        // Only the cells within maxEdits of the diagonal can stay within maxEdits, so each row fills just that band and
+        // marks the cells either side of it as out of reach for the next rows to read.
+        int outOfReach = maxEdits + 1;
+        int[] beforePrevious = new int[right.length() + 1];
+        int[] previous = new int[right.length() + 1];
+        int[] current = new int[right.length() + 1];
+        for (int j = 0; j <= right.length(); j++) {
+            previous[j] = Math.min(j, outOfReach);
+        }
+
+        for (int i = 1; i <= left.length(); i++) {
+            int from = Math.max(1, i - maxEdits);
+            int to = Math.min(right.length(), i + maxEdits);
+            current[from - 1] = from == 1 ? Math.min(i, outOfReach) : outOfReach;
+            if (to < right.length()) {
+                current[to + 1] = outOfReach;
+            }
+
+            int rowMin = current[from - 1];
+            for (int j = from; j <= to; j++) {
+                int cost = left.charAt(i - 1) == right.charAt(j - 1) ? 0 : 1;
+                int edits = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && left.charAt(i - 1) == right.charAt(j - 2) && left.charAt(i - 2) == right.charAt(j - 1)) {
+                    edits = Math.min(edits, beforePrevious[j - 2] + 1);
+                }
+                current[j] = Math.min(edits, outOfReach);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+
+            // Every later row is at least this row's smallest value, so there's no need to finish.
+            if (rowMin > maxEdits) {
+                return outOfReach;
+            }
+
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[right.length()];
+    }
+
+    /**
+     * @description The destinations a matcher chooses from. Each one is known by an int id that only the source has to
+     *              understand, so the matcher can refer to a name without holding a copy of it.
+     */
+    public interface Candidates<T> {
+
+        int size();
+
+        /**
+         * @description Call the action with the id of every candidate.
+         */
+        void forEachCandidate(IntConsumer action);
+
+        String getCandidateName(int id);
+
+        T getCandidateValue(int id);
+
+        /**
+         * @return The id of the candidate with exactly this name, or -1 if there is none.
+         */
+        int findCandidate(String name);
+    }
+
+    /**
+     * @description The destination picked for a name and how confident we are in the pairing (0 to 1).
+     */
+    public static class Match<T> {
+
+        public Match(T value, String matchedName, double confidence) {
+            Value = value;
+            MatchedName = matchedName;
+            Confidence = confidence;
+        }
+
+        public final T Value;
+        public final String MatchedName;
+        public final double Confidence;
+    }
+
+    /**
+     * @description Numbers the distinct trigrams, keyed by the long from getGramKey, in an open-addressing table.
+     */
+    private static final class GramTable {
+
+        private long[] keys = new long[1024];
+        // Gram id + 1, so an empty slot is 0.
+        private int[] ids = new int[1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return The trigram's id, or -1 if no candidate has it.
+         */
+        int get(long key) {
+            int slot = findSlot(keys, ids, key);
+            return ids[slot] - 1;
+        }
+
+        /**
+         * @return The trigram's id, numbering it first if it's new.
+         */
+        int add(long key) {
+            int slot = findSlot(keys, ids, key);
+            if (ids[slot] != 0) {
+                return ids[slot] - 1;
+            }
+
+            keys[slot] = key;
+            ids[slot] = ++size;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+            return size - 1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new long[oldKeys.length * 2];
+            ids = new int[oldIds.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldIds[i] != 0) {
+                    int slot = findSlot(keys, ids, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+
+        private static int findSlot(long[] keys, int[] ids, long key) {
+            int mask = keys.length - 1;
+            int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (ids[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * @description Collects the posting lists while the candidates are numbered, growing each list as it fills.
+     */
+    private static final class PostingsBuilder {
+
+        private int[][] lists = new int[1024][];
+        private int[] sizes = new int[1024];
+
+        /**
+         * @return False if the candidate is already on this trigram's list, i.e. the trigram repeats within its name.
+         */
+        boolean add(int gramId, int index) {
+            if (gramId >= lists.length) {
+                lists = Arrays.copyOf(lists, lists.length * 2);
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+            }
+
+            int[] list = lists[gramId];
+            int size = sizes[gramId];
+            if (list == null) {
+                list = lists[gramId] = new int[4];
+            } else if (list[size - 1] == index) {
+                return false;
+            } else if (size == list.length) {
+                list = lists[gramId] = Arrays.copyOf(list, size * 2);
+            }
+            list[size] = index;
+            sizes[gramId]++;
+            return true;
+        }
+
+        int[][] build(int gramCount) {
+            int[][] postings = new int[gramCount][];
+            for (int gramId = 0; gramId < gramCount; gramId++) {
+                postings[gramId] = lists[gramId].length == sizes[gramId] ? lists[gramId] : Arrays.copyOf(lists[gramId], sizes[gramId]);
+                lists[gramId] = null;
+            }
+            return postings;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.migration;
+
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+
+/**
+ * @description The few folder fields the migration needs, captured once. BoxFolder.getInfo() makes a request every
+ *              time it is called, so the migration reads these values from a snapshot taken from a listing call instead.
+ */
+public final class FolderSnapshot {
+
+    /**
+     * @description The fields to request from Box when listing or fetching folders that will become snapshots.
+     */
+    public static final String[] FIELDS = new String[] {"id", "name", "type", "size"};
+
+    public FolderSnapshot(String id, String name, long size) {
+        if (id == null) {
+            throw new IllegalArgumentException("The folder id can not be null.");
+        }
+
+        Id = id;
+        Name = name;
+        Size = size;
+    }
+
+    public final String Id;
+    public final String Name;
+    public final long Size;
+
+    /**
+     * @description Take a snapshot from an item returned by a listing that requested FIELDS.
+     */
+    public static FolderSnapshot of(BoxItem.Info itemInfo) {
+        return new FolderSnapshot(itemInfo.getID(), itemInfo.getName(), itemInfo.getSize());
+    }
+
+    /**
+     * @description Fetch a snapshot with a single request for just the fields we need.
+     */
+    public static FolderSnapshot fetch(BoxFolder folder) {
+        return of(BoxApiService.call("getInfo", api -> new BoxFolder(api, folder.getID()).getInfo(FIELDS)));
+    }
+
+    @Override
+    public String toString() {
+        return Name + " - " + Id;
+    }
+}
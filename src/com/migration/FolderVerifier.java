@@ -0,0 +1,251 @@
+package com.migration;
+
+import com.box.sdk.BoxFile;
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * @description Confirms that a copied folder matches its origin. Each folder gets a Merkle-style digest: a SHA-256 over
+ *              its children in name order, where a file contributes its name, SHA-1 and size and a subfolder contributes
+ *              its name and its own digest. Two trees match exactly when their root digests do, so an intact copy costs
+ *              one comparison once both trees are hashed. Subfolders are hashed in parallel on a work-stealing pool.
+ *              Every folder is listed on every verification: Box doesn't change a folder's modified_at or size for a
+ *              rename, a move between its subfolders or a same-size edit further down, so a digest kept from an earlier
+ *              run could report a changed tree as verified. The digests are only kept for the length of one
+ *              verification, so when they differ the verifier can walk down just the differing branches to name the
+ *              first few differences.
+ */
+public class FolderVerifier {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_MAX_REPORTED_DIFFERENCES = 5;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    public static final String VERIFIED = "Verified";
+    public static final String MISMATCH = "Mismatch";
+
+    private static final String[] DIGEST_FIELDS = new String[] {"id", "name", "type", "size", "sha1"};
+
+    private final ForkJoinPool pool;
+    private final int maxReportedDifferences;
+
+    public FolderVerifier() {
+        this(DEFAULT_PARALLELISM, DEFAULT_MAX_REPORTED_DIFFERENCES);
+    }
+
+    public FolderVerifier(int parallelism, int maxReportedDifferences) {
+        if (parallelism < 1 || maxReportedDifferences < 1) {
+            throw new IllegalArgumentException("The parallelism and max reported differences must be at least 1.");
+        }
+
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxReportedDifferences = maxReportedDifferences;
+    }
+
+    /**
+     * @description Compare a copied folder with its origin. Both trees are hashed at the same time.
+     */
+    public Verification verify(String originFolderId, String copyFolderId) {
+        Map<String, byte[]> digestsByFolderId = new ConcurrentHashMap<String, byte[]>();
+        ForkJoinTask<byte[]> originDigest = pool.submit(new DigestTask(originFolderId, digestsByFolderId));
+        ForkJoinTask<byte[]> copyDigest = pool.submit(new DigestTask(copyFolderId, digestsByFolderId));
+
+        if (Arrays.equals(originDigest.join(), copyDigest.join())) {
+            return new Verification(VERIFIED, null);
+        }
+
+        List<String> differences = new ArrayList<String>();
+        findDifferences(originFolderId, copyFolderId, "", digestsByFolderId, differences);
+        return new Verification(MISMATCH, String.join("; ", differences));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @description Walk the two folders side by side and record differences, only descending into subfolders whose
+     *              digests differ. Every subfolder was hashed by verify(), so only the listings cost calls.
+     */
+    private void findDifferences(String originFolderId, String copyFolderId, String path, Map<String, byte[]> digestsByFolderId,
+                                 List<String> differences) {
+        Map<String, BoxItem.Info> copyChildrenByName = new HashMap<String, BoxItem.Info>();
+        for (BoxItem.Info copyChild : listChildren(copyFolderId)) {
+            copyChildrenByName.putIfAbsent(copyChild.getName(), copyChild);
+        }
+
+        for (BoxItem.Info originChild : listChildren(originFolderId)) {
+            if (differences.size() >= maxReportedDifferences) {
+                return;
+            }
+
+            String childPath = path + originChild.getName();
+            BoxItem.Info copyChild = copyChildrenByName.remove(originChild.getName());
+            if (copyChild == null || isFolder(originChild) != isFolder(copyChild)) {
+                differences.add("Missing: " + childPath);
+            } else if (isFolder(originChild)) {
+                if (!Arrays.equals(digestsByFolderId.get(originChild.getID()), digestsByFolderId.get(copyChild.getID()))) {
+                    findDifferences(originChild.getID(), copyChild.getID(), childPath + "/", digestsByFolderId, differences);
+                }
+            } else if (!getFileFingerprint(originChild).equals(getFileFingerprint(copyChild))) {
+                differences.add("Changed: " + childPath);
+            }
+        }
+
+        // Whatever is left only exists in the copy.
+        for (String extraName : copyChildrenByName.keySet()) {
+            if (differences.size() >= maxReportedDifferences) {
+                return;
+            }
+            differences.add("Extra: " + path + extraName);
+        }
+    }
+
+    private static List<BoxItem.Info> listChildren(String folderId) {
+        List<BoxItem.Info> children = new ArrayList<BoxItem.Info>();
+        BoxApiService.forEachChild(new BoxFolder(BoxApiService.getAPI(), folderId), DEFAULT_PAGE_SIZE, DIGEST_FIELDS, children::add);
+        return children;
+    }
+
+    /**
+     * @description Run a blocking Box call from a pool task. The pool adds a thread while this one waits, so slow or
+     *              throttled calls don't leave it without workers to hash the rest of the tree.
+     */
+    private static <T> T callBlocking(Supplier<T> request) {
+        BlockingCall<T> call = new BlockingCall<T>(request);
+        try {
+            ForkJoinPool.managedBlock(call);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Box.", ex);
+        }
+        return call.result;
+    }
+
+    private static class BlockingCall<T> implements ForkJoinPool.ManagedBlocker {
+
+        private final Supplier<T> request;
+        private T result;
+        private boolean isDone = false;
+
+        BlockingCall(Supplier<T> request) {
+            this.request = request;
+        }
+
+        @Override
+        public boolean block() {
+            result = request.get();
+            isDone = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return isDone;
+        }
+    }
+
+    private static boolean isFolder(BoxItem.Info itemInfo) {
+        return itemInfo instanceof BoxFolder.Info;
+    }
+
+    private static String getFileFingerprint(BoxItem.Info fileInfo) {
+        String sha1 = fileInfo instanceof BoxFile.Info ? ((BoxFile.Info)fileInfo).getSha1() : null;
+        return (sha1 == null ? "" : sha1) + "|" + fileInfo.getSize();
+    }
+
+    /**
+     * @description Hashes one folder, forking a task per subfolder so the pool's idle threads steal the wide parts of
+     *              the tree.
+     */
+    // ForkJoinTask is Serializable, but these tasks never leave the pool.
+    @SuppressWarnings("serial")
+    private class DigestTask extends RecursiveTask<byte[]> {
+
+        private final String folderId;
+        private final Map<String, byte[]> digestsByFolderId;
+
+        DigestTask(String folderId, Map<String, byte[]> digestsByFolderId) {
+            this.folderId = folderId;
+            this.digestsByFolderId = digestsByFolderId;
+        }
+
+        @Override
+        protected byte[] compute() {
+            List<BoxItem.Info> children = callBlocking(() -> listChildren(folderId));
+            children.sort(Comparator.comparing(BoxItem.Info::getName));
+
+            List<DigestTask> subfolderTasks = new ArrayList<DigestTask>();
+            for (BoxItem.Info child : children) {
+                if (isFolder(child)) {
+                    subfolderTasks.add(new DigestTask(child.getID(), digestsByFolderId));
+                }
+            }
+            invokeAll(subfolderTasks);
+
+            MessageDigest digest = newDigest();
+            int subfolderIndex = 0;
+            for (BoxItem.Info child : children) {
+                // A 0 byte ends each field so names can't run into the values after them.
+                if (isFolder(child)) {
+                    update(digest, "D" + child.getName());
+                    digest.update(subfolderTasks.get(subfolderIndex++).join());
+                } else {
+                    update(digest, "F" + child.getName());
+                    update(digest, getFileFingerprint(child));
+                }
+            }
+
+            byte[] folderDigest = digest.digest();
+            digestsByFolderId.put(folderId, folderDigest);
+            return folderDigest;
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException("SHA-256 is not available.", ex);
+        }
+    }
+
+    /**
+     * @description The outcome of one verification: VERIFIED or MISMATCH, and the first few differences for a mismatch.
+     */
+    public static class Verification {
+
+        public Verification(String status, String differences) {
+            Status = status;
+            Differences = differences;
+        }
+
+        public final String Status;
+        public final String Differences;
+
+        public boolean isVerified() {
+            return VERIFIED.equals(Status);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.migration;
+
+import com.box.sdk.BoxFile;
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description Writes an inventory of every item below a folder (path, id, type, size and SHA-1), listing many folders
+ *              at once. Each listed folder forks a task per subfolder onto a work-stealing pool in FIFO mode, so the tree
+ *              is crawled breadth first and idle threads take work from busy ones. Rows are written as each folder
+ *              finishes, so memory holds only the folders still waiting to be listed, not the items found so far.
+ *              Progress is kept in a frontier log next to the output: each finished folder appends the subfolders it
+ *              found and a done record with the output length at that point. A crawl that was cut off is resumed by
+ *              replaying the log, cutting the output back to the last finished folder and listing the rest. The log
+ *              starts with the crawl's root, max depth and format, so it is never resumed by a different crawl, and it is
+ *              deleted once every folder is listed, so the next crawl of the same folder starts over.
+ *              The binary format is one block per folder: the folder path (UTF), the row count (int), then per row a
+ *              type byte (0 file, 1 folder, 2 web link, +0x80 if a SHA-1 follows), the id (long), the size (long), the
+ *              name (UTF) and the 20-byte SHA-1.
+ */
+public class InventoryCrawler {
+
+    public static final int DEFAULT_PARALLELISM = 16;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    public static final String[] CSV_COLUMNS = new String[] {"Path", "ID", "Type", "Size", "SHA-1"};
+
+    private static final String[] INVENTORY_FIELDS = new String[] {"id", "name", "type", "size", "sha1"};
+    private static final int BINARY_FORMAT_VERSION = 1;
+    private static final int FRONTIER_FORMAT_VERSION = 1;
+    private static final byte QUEUED = 'Q';
+    private static final byte DONE = 'D';
+    private static final byte HAS_SHA1 = (byte)0x80;
+
+    public enum Format { CSV, BINARY }
+
+    private final File outputFile;
+    private final File frontierFile;
+    private final Format format;
+    private final int maxDepth;
+    private final int parallelism;
+
+    // Guarded by this.
+    private FileOutputStream output;
+    private DataOutputStream frontier;
+    // Once a write fails the files may hold part of a folder, so nothing more is committed. Resuming cuts it off.
+    private IOException commitError;
+
+    private final AtomicLong itemCount = new AtomicLong();
+    private final AtomicLong folderCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong outstandingTasks = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * @param maxDepth How many levels of items to list. 1 lists only the items directly inside the root.
+     */
+    public InventoryCrawler(File outputFile, File frontierFile, Format format, int maxDepth, int parallelism) {
+        if (maxDepth < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("The max depth and parallelism must be at least 1.");
+        }
+
+        this.outputFile = outputFile;
+        this.frontierFile = frontierFile;
+        this.format = format;
+        this.maxDepth = maxDepth;
+        this.parallelism = parallelism;
+    }
+
+    public void crawl(String rootFolderId) throws IOException, InterruptedException {
+        crawl(rootFolderId, false);
+    }
+
+    /**
+     * @description Crawl the folder, or resume the crawl recorded in the frontier log. Folders that fail to list are
+     *              left in the log, so running the crawl again retries just those.
+     * @param isFreshRun Throw away any crawl in the frontier log and start over.
+     */
+    public void crawl(String rootFolderId, boolean isFreshRun) throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        if (isFreshRun && frontierFile.exists() && !frontierFile.delete()) {
+            throw new IOException("Unable to delete the inventory frontier log " + frontierFile.getPath());
+        }
+        List<PendingFolder> pending = replayFrontier(rootFolderId);
+
+        if (pending == null) {
+            BoxFolder.Info rootInfo = BoxApiService.call("getInfo", api -> new BoxFolder(api, rootFolderId).getInfo("name"));
+            pending = new ArrayList<PendingFolder>();
+            pending.add(new PendingFolder(rootFolderId, rootInfo.getName(), 0));
+            startNewCrawl(rootFolderId, pending);
+        } else if (pending.isEmpty()) {
+            // The crawl finished but stopped before deleting its log.
+            retireFrontier();
+            System.out.println("The inventory in " + outputFile.getPath() + " is already complete.");
+            return;
+        } else {
+            openForAppend();
+            System.out.println("Resuming the inventory with " + pending.size() + " folders left to list.");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        try {
+            outstandingTasks.addAndGet(pending.size());
+            for (PendingFolder folder : pending) {
+                pool.execute(new ListFolderTask(folder));
+            }
+
+            // Tasks fork their subfolders without waiting on them, so the crawl is over when the last task finishes.
+            // This thread only waits: a task run here instead of on a worker would fork its subfolders elsewhere.
+            while (!finished.await(1, TimeUnit.MINUTES)) {
+                System.out.println("Inventory progress: " + folderCount.get() + " folders, " + itemCount.get() + " items listed.");
+            }
+        } finally {
+            pool.shutdownNow();
+            synchronized (this) {
+                output.close();
+                frontier.close();
+            }
+        }
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+        System.out.println("Listed " + itemCount.get() + " items in " + folderCount.get() + " folders in " + elapsedMillis
+                + " (ms). " + String.format("%.0f", itemCount.get() * 1000.0 / elapsedMillis) + " items/s");
+        if (errorCount.get() > 0) {
+            System.out.println(errorCount.get() + " folders could not be listed. Run the inventory again to retry them.");
+        } else {
+            retireFrontier();
+        }
+    }
+
+    private void retireFrontier() throws IOException {
+        if (!frontierFile.delete()) {
+            throw new IOException("Unable to delete the inventory frontier log " + frontierFile.getPath());
+        }
+    }
+
+    private void startNewCrawl(String rootFolderId, List<PendingFolder> roots) throws IOException {
+        output = new FileOutputStream(outputFile);
+        frontier = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(frontierFile)));
+        frontier.writeInt(FRONTIER_FORMAT_VERSION);
+        frontier.writeUTF(rootFolderId);
+        frontier.writeInt(maxDepth);
+        frontier.writeUTF(format.name());
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if (format == Format.CSV) {
+            CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(header, StandardCharsets.UTF_8));
+            csvWriter.writeNext(CSV_COLUMNS);
+            csvWriter.flush();
+        } else {
+            new DataOutputStream(header).writeInt(BINARY_FORMAT_VERSION);
+        }
+
+        // The root is queued by a done record of its own, so a crash before its listing finishes still resumes it.
+        commit("", header.toByteArray(), roots);
+    }
+
+    private void openForAppend() throws IOException {
+        output = new FileOutputStream(outputFile, true);
+        frontier = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(frontierFile, true)));
+    }
+
+    /**
+     * @description Read the frontier log and cut the log and the output back to the last finished folder.
+     * @return The folders queued but not yet listed, or null if there is no crawl to resume.
+     */
+    private List<PendingFolder> replayFrontier(String rootFolderId) throws IOException {
+        if (!frontierFile.exists() || !outputFile.exists()) {
+            return null;
+        }
+
+        // Queued records only count once the done record of the folder that found them is written.
+        Map<String, PendingFolder> pendingById = new LinkedHashMap<String, PendingFolder>();
+        List<PendingFolder> uncommitted = new ArrayList<PendingFolder>();
+        long committedLogLength = 0;
+        long committedOutputLength = -1;
+
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(frontierFile)));
+             DataInputStream in = new DataInputStream(counter)) {
+            checkFrontierHeader(in, rootFolderId);
+            while (true) {
+                byte recordType = in.readByte();
+                if (recordType == QUEUED) {
+                    uncommitted.add(new PendingFolder(in.readUTF(), in.readUTF(), in.readInt()));
+                } else if (recordType == DONE) {
+                    String folderId = in.readUTF();
+                    committedOutputLength = in.readLong();
+                    for (PendingFolder folder : uncommitted) {
+                        pendingById.putIfAbsent(folder.Id, folder);
+                    }
+                    uncommitted.clear();
+                    pendingById.remove(folderId);
+                    committedLogLength = counter.getCount();
+                } else {
+                    throw new IOException("The inventory frontier log " + frontierFile.getPath() + " is corrupt.");
+                }
+            }
+        } catch (EOFException ex) {
+            // The end of the log, possibly partway through a record that was cut off.
+        }
+
+        if (committedOutputLength < 0) {
+            return null;
+        }
+
+        try (RandomAccessFile log = new RandomAccessFile(frontierFile, "rw")) {
+            log.setLength(committedLogLength);
+        }
+        try (RandomAccessFile outputLog = new RandomAccessFile(outputFile, "rw")) {
+            if (outputLog.length() < committedOutputLength) {
+                throw new IOException("The inventory " + outputFile.getPath() + " is shorter than its frontier log says.");
+            }
+            outputLog.setLength(committedOutputLength);
+        }
+        return new ArrayList<PendingFolder>(pendingById.values());
+    }
+
+    /**
+     * @description Make sure the frontier log belongs to this crawl. Resuming another root or depth would mix two
+     *              inventories in one file.
+     * @throws EOFException If the header was cut off, which means no folder was ever finished.
+     */
+    private void checkFrontierHeader(DataInputStream in, String rootFolderId) throws IOException {
+        int version = in.readInt();
+        if (version != FRONTIER_FORMAT_VERSION) {
+            throw new IOException("The inventory frontier log " + frontierFile.getPath() + " has unknown version " + version + ".");
+        }
+
+        String loggedRootFolderId = in.readUTF();
+        int loggedMaxDepth = in.readInt();
+        String loggedFormat = in.readUTF();
+        if (!loggedRootFolderId.equals(rootFolderId) || loggedMaxDepth != maxDepth || !loggedFormat.equals(format.name())) {
+            throw new IOException("The inventory frontier log " + frontierFile.getPath() + " belongs to a crawl of folder "
+                    + loggedRootFolderId + " with max depth " + loggedMaxDepth + " (" + loggedFormat + "). Finish that crawl "
+                    + "or start over with --fresh.");
+        }
+    }
+
+    /**
+     * @description Append a folder's rows to the output, then record the subfolders it found and that it is done.
+     *              The order matters for resuming: a done record is only written once its rows are in the output.
+     */
+    private synchronized void commit(String folderId, byte[] rows, List<PendingFolder> subfolders) throws IOException {
+        if (commitError != null) {
+            throw new IOException("An earlier write to the inventory failed.", commitError);
+        }
+
+        try {
+            writeCommit(folderId, rows, subfolders);
+        } catch (IOException ex) {
+            commitError = ex;
+            throw ex;
+        }
+    }
+
+    private void writeCommit(String folderId, byte[] rows, List<PendingFolder> subfolders) throws IOException {
+        output.write(rows);
+        output.flush();
+        long outputLength = output.getChannel().position();
+
+        for (PendingFolder subfolder : subfolders) {
+            frontier.writeByte(QUEUED);
+            frontier.writeUTF(subfolder.Id);
+            frontier.writeUTF(subfolder.Path);
+            frontier.writeInt(subfolder.Depth);
+        }
+        frontier.writeByte(DONE);
+        frontier.writeUTF(folderId);
+        frontier.writeLong(outputLength);
+        frontier.flush();
+    }
+
+    // Never serialized. It only exists inside the crawl's ForkJoinPool.
+    @SuppressWarnings("serial")
+    private class ListFolderTask extends RecursiveAction {
+
+        private final PendingFolder folder;
+
+        ListFolderTask(PendingFolder folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                List<PendingFolder> subfolders = new ArrayList<PendingFolder>();
+                byte[] rows = listFolder(subfolders);
+                commit(folder.Id, rows, subfolders);
+                folderCount.incrementAndGet();
+
+                outstandingTasks.addAndGet(subfolders.size());
+                for (PendingFolder subfolder : subfolders) {
+                    new ListFolderTask(subfolder).fork();
+                }
+            } catch (Exception ex) {
+                // The folder stays queued in the frontier log, so resuming the crawl lists it again.
+                errorCount.incrementAndGet();
+                System.out.println("Unable to list " + folder.Path + " (" + folder.Id + "). Error: " + ex.getMessage());
+            } finally {
+                if (outstandingTasks.decrementAndGet() == 0) {
+                    finished.countDown();
+                }
+            }
+        }
+
+        private byte[] listFolder(List<PendingFolder> subfolders) throws IOException {
+            ByteArrayOutputStream rows = new ByteArrayOutputStream();
+            RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(rows) : new BinaryRowWriter(rows, folder.Path);
+
+            BoxApiService.forEachChild(new BoxFolder(BoxApiService.getAPI(), folder.Id), DEFAULT_PAGE_SIZE, INVENTORY_FIELDS, itemInfo -> {
+                String path = folder.Path + "/" + itemInfo.getName();
+                rowWriter.write(path, itemInfo);
+                if (itemInfo instanceof BoxFolder.Info && folder.Depth + 1 < maxDepth) {
+                    subfolders.add(new PendingFolder(itemInfo.getID(), path, folder.Depth + 1));
+                }
+            });
+
+            itemCount.addAndGet(rowWriter.getRowCount());
+            rowWriter.finish();
+            return rows.toByteArray();
+        }
+    }
+
+    private static String getSha1(BoxItem.Info itemInfo) {
+        return itemInfo instanceof BoxFile.Info ? ((BoxFile.Info)itemInfo).getSha1() : null;
+    }
+
+    /**
+     * @description Encodes one folder's rows.
+     */
+    private abstract static class RowWriter {
+
+        private int rowCount = 0;
+
+        void write(String path, BoxItem.Info itemInfo) {
+            writeRow(path, itemInfo);
+            rowCount++;
+        }
+
+        int getRowCount() {
+            return rowCount;
+        }
+
+        abstract void writeRow(String path, BoxItem.Info itemInfo);
+
+        abstract void finish() throws IOException;
+    }
+
+    private static class CsvRowWriter extends RowWriter {
+
+        private final CSVWriter csvWriter;
+        private final String[] csvRow = new String[CSV_COLUMNS.length];
+
+        CsvRowWriter(ByteArrayOutputStream rows) {
+            csvWriter = new CSVWriter(new OutputStreamWriter(rows, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        void writeRow(String path, BoxItem.Info itemInfo) {
+            String sha1 = getSha1(itemInfo);
+            csvRow[0] = path;
+            csvRow[1] = itemInfo.getID();
+            csvRow[2] = getTypeName(itemInfo);
+            csvRow[3] = String.valueOf(itemInfo.getSize());
+            csvRow[4] = sha1 == null ? "" : sha1;
+            csvWriter.writeNext(csvRow);
+        }
+
+        @Override
+        void finish() throws IOException {
+            csvWriter.flush();
+        }
+
+        private static String getTypeName(BoxItem.Info itemInfo) {
+            if (itemInfo instanceof BoxFolder.Info) {
+                return "folder";
+            }
+            return itemInfo instanceof BoxFile.Info ? "file" : "web_link";
+        }
+    }
+
+    private static class BinaryRowWriter extends RowWriter {
+
+        private final ByteArrayOutputStream block;
+        private final String folderPath;
+        // The rows go to their own buffer so the count can be written ahead of them.
+        private final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(rows);
+
+        BinaryRowWriter(ByteArrayOutputStream block, String folderPath) {
+            this.block = block;
+            this.folderPath = folderPath;
+        }
+
+        @Override
+        void writeRow(String path, BoxItem.Info itemInfo) {
+            String sha1 = getSha1(itemInfo);
+            byte type = itemInfo instanceof BoxFolder.Info ? (byte)1 : (itemInfo instanceof BoxFile.Info ? (byte)0 : (byte)2);
+            boolean hasSha1 = sha1 != null && sha1.length() == 40;
+
+            try {
+                out.writeByte(hasSha1 ? type | HAS_SHA1 : type);
+                out.writeLong(Long.parseLong(itemInfo.getID()));
+                out.writeLong(itemInfo.getSize());
+                out.writeUTF(itemInfo.getName());
+                if (hasSha1) {
+                    for (int i = 0; i < 40; i += 2) {
+                        out.writeByte(Integer.parseInt(sha1.substring(i, i + 2), 16));
+                    }
+                }
+            } catch (IOException ex) {
+                // Writing to memory never fails.
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            DataOutputStream header = new DataOutputStream(block);
+            header.writeUTF(folderPath);
+            header.writeInt(getRowCount());
+            rows.writeTo(block);
+        }
+    }
+
+    /**
+     * @description A folder waiting to be listed: its id, its path from the crawl root, and how deep it is.
+     */
+    private static class PendingFolder {
+
+        PendingFolder(String id, String path, int depth) {
+            Id = id;
+            Path = path;
+            Depth = depth;
+        }
+
+        final String Id;
+        final String Path;
+        final int Depth;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
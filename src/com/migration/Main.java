@@ -13,10 +13,17 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 public class Main {
 
-    private static final int MAX_DEPTH = 0;
+    // How many levels below each origin folder to descend, both when listing and when migrating.
+    // At 0, only first-level subfolders are migrated and existing ones are left alone. Above 0, existing subfolders are
+    // synced file by file so partial migrations are finished.
+    private static final int MAX_DEPTH = BoxApiService.DEFAULT_MAX_DEPTH;
     // This is the Id for the Accounts directory used for production.
 //    private static final String ACCOUNTS_DIRECTORY = "56475663396";
     // This is the Id for the Accounts directory used for the sandbox.
@@ -25,11 +32,25 @@ public class Main {
 
     private static final String DEFAULT_FILE_PATH = "/Users/zacharyfield/Desktop/sacscoc-box-migration-logs/";
     private static final String DEFAULT_LOG_FILE_NAME = "sacscoc-box-file-migration-log";
+    private static final String MIGRATION_JOURNAL_FILE_NAME = "sacscoc-box-file-migration-journal.log";
+    private static final String FOLDER_LISTING_CACHE_FILE_NAME = "sacscoc-box-folder-listing-cache.bin";
+    private static final String VERIFICATION_LOG_FILE_NAME = "sacscoc-box-file-verification-log";
+    private static final String MIGRATION_PLAN_FILE_NAME = "sacscoc-box-migration-plan";
+    private static final String METRICS_FILE_NAME = "sacscoc-box-migration-metrics";
+    private static final String EVENT_STREAM_POSITION_FILE_NAME = "sacscoc-box-event-stream-position";
+    private static final String INVENTORY_FILE_NAME = "sacscoc-box-inventory";
+    private static final String LEGACY_ID_MAPPING_REJECTS_FILE_NAME = "sacscoc-box-legacy-id-mapping-rejects.csv";
 
     private static final String BOX_FOLDER_MAPPING_INFO_CSV = "/Users/zacharyfield/Desktop/SACSCOC Box Migration - Legacy Id Mapping - legacy-id-mapping (1).csv";
     private static final String BOX_CHILD_LIST_FILE_PATH = "/Users/zacharyfield/Desktop/";
 
-    private static final String[] MIGRATION_LOG_COLUMNS = new String[] {"Origin Folder Name", "Origin Folder ID", "Destination Folder Name","Destination Folder ID", "Migrated Folder Name", "Migrated Folder ID", "Number of Files", "Status", "Details"} ;
+    // The slice of origin folders this process migrates. Set with --shard=<index>/<count>.
+    private static ShardAssignment shard = ShardAssignment.ALL;
+
+    // Whether to verify each migrated folder against its origin after copying it. Set with --verify.
+    private static boolean isVerifying = false;
+
+    private static final String[] MIGRATION_LOG_COLUMNS = new String[] {"Origin Folder Name", "Origin Folder ID", "Destination Folder Name","Destination Folder ID", "Migrated Folder Name", "Migrated Folder ID", "Number of Files", "Status", "Details", "Verification", "Match Confidence"} ;
 
     public static void main(String[] args) {
         // Turn off logging to prevent polluting the output.
@@ -37,10 +58,45 @@ public class Main {
 
         System.out.println("BEGIN: Box File Migration");
 
+        // No arguments runs the migration. "plan" writes a dry-run plan instead, and "execute-plan [plan file]" migrates
+        // the folders in a plan, largest first, defaulting to the newest plan the shard wrote.
+        // "merge [log files]" combines the logs of sharded runs.
+        // "sync [plan file]" follows the Box event stream after the bulk migration and copies new and changed items.
+        // "verify [plan file]" compares every migrated folder with its origin without copying anything.
+        // "inventory [folder id] [max depth] [csv|binary] [--fresh]" lists everything below a folder, resuming a crawl that
+        // was cut off unless --fresh is given.
+        // Add --verify to a migration to verify each folder after it is copied.
+        // Add --shard=<index>/<count> to run one of several worker processes, each migrating its own slice of the folders.
+        ArrayList<String> arguments = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("--shard=")) {
+                shard = ShardAssignment.parse(arg.substring("--shard=".length()));
+                System.out.println("Running shard " + shard);
+            } else if (arg.equals("--verify")) {
+                isVerifying = true;
+            } else {
+                arguments.add(arg);
+            }
+        }
+        String mode = arguments.isEmpty() ? "migrate" : arguments.get(0);
+
         try {
 //            runBoxExample();
-            runBoxFileMigration();
-//            runGenerateCsvOfBoxChildren();
+            if (mode.equals("plan")) {
+                runBoxFileMigrationPlan();
+            } else if (mode.equals("execute-plan")) {
+                runExecutePlan(arguments.size() > 1 ? arguments.get(1) : null);
+            } else if (mode.equals("merge")) {
+                runMergeShardLogs(arguments.subList(1, arguments.size()));
+            } else if (mode.equals("sync")) {
+                runEventStreamSync(arguments.size() > 1 ? arguments.get(1) : null);
+            } else if (mode.equals("inventory")) {
+                runBoxInventory(arguments.subList(1, arguments.size()));
+            } else if (mode.equals("verify")) {
+                runBoxFileMigration(arguments.size() > 1 ? arguments.get(1) : null, true);
+            } else {
+                runBoxFileMigration(null, false);
+            }
         } catch (BoxAPIException ex) {
             System.out.println("BoxAPIException - Error: " + ex.getMessage());
             System.out.println("API Response: " + ex.getResponse());
@@ -50,18 +106,24 @@ public class Main {
         }
     }
 
-    private static final Integer MAX_FOLDERS_TO_MIGRATE = 21;
-    private static void runBoxFileMigration() throws IOException {
+    private static final int MIGRATION_THREAD_COUNT = MigrationEngine.DEFAULT_THREAD_COUNT;
+    private static final int MAX_COPIES_PER_DESTINATION = MigrationEngine.DEFAULT_MAX_COPIES_PER_DESTINATION;
+    private static final MigrationLogWriter.Durability LOG_DURABILITY = MigrationLogWriter.Durability.FLUSH;
+    /**
+     * @param planFilePath The plan to execute, or null to match and migrate everything in FILES_TO_MIGRATE_DIRECTORY.
+     * @param isVerifyOnly Only verify the folders that are already migrated, including ones the journal lists as done.
+     */
+    private static void runBoxFileMigration(String planFilePath, boolean isVerifyOnly) throws IOException {
         // Set up our CSV log file that will contain the results of each migration.
+        // Rows are written on their own thread and flushed in batches so logging never holds up the copies.
         File logFile = null;
-        CSVWriter writer = null;
+        MigrationLogWriter writer = null;
         long startTime = System.nanoTime();
 
         try {
-            logFile = getNewUniqueFileInPath(DEFAULT_FILE_PATH, DEFAULT_LOG_FILE_NAME);
+            logFile = getNewUniqueFileInPath(DEFAULT_FILE_PATH, (isVerifyOnly ? VERIFICATION_LOG_FILE_NAME : DEFAULT_LOG_FILE_NAME) + shard.getFileSuffix());
 
-            writer = new CSVWriter(new FileWriter(logFile));
-            writer.writeNext(MIGRATION_LOG_COLUMNS);
+            writer = new MigrationLogWriter(logFile, MIGRATION_LOG_COLUMNS, LOG_DURABILITY, MigrationLogWriter.DEFAULT_ROWS_PER_FLUSH, MigrationLogWriter.DEFAULT_FLUSH_INTERVAL_MILLIS);
         } catch (Exception ex) {
             System.out.println("No Files Migrated. Error creating the log file: " + ex.getMessage());
             return;
@@ -73,141 +135,274 @@ public class Main {
             return;
         }
 
+        // Replay the journal from any earlier run so finished folders are skipped without calling the API.
+        // A verification makes no changes, so it neither reads nor writes the journal.
+        MigrationJournal journal = null;
+        try {
+            journal = isVerifyOnly ? null : new MigrationJournal(getJournalFile());
+        } catch (IOException ex) {
+            System.out.println("No Files Migrated. Error opening the migration journal: " + ex.getMessage());
+            writer.close();
+            return;
+        }
+
         // Establish a connection to the API.
         BoxApiService.getAPI();
+        loadFolderListingCache();
+
+        FolderVerifier verifier = isVerifying || isVerifyOnly ? new FolderVerifier() : null;
+
+        // Print a summary now and then, and keep a JSON copy of the numbers for anything watching the run.
+        File metricsFile = new File(DEFAULT_FILE_PATH + METRICS_FILE_NAME + shard.getFileSuffix() + ".json");
+        MigrationMetrics.get().startReporting(metricsFile, MigrationMetrics.DEFAULT_REPORT_INTERVAL_SECONDS);
 
         try {
-            // Now get the folders in the directory that contains the files which need to be migrated.
-            BoxFolder migrateDirectory = new BoxFolder(BoxApiService.getAPI(), FILES_TO_MIGRATE_DIRECTORY);
-
-            System.out.println("Begin matching folders to migrate with their destination by name");
-            // Now get the folders in the directory where the files will be migrated to. (i.e. The destination folders)
-            // Group them by name. Again, the names should correspond to the names of an account.
-            HashMap<String, BoxFolder> destinationFoldersByName = BoxApiService.getChildFoldersByName(ACCOUNTS_DIRECTORY);
-
-            // Once we have two maps, we will use the keys from the map containing the files to migrate to build
-            // The BoxFileMigrator instances.
-            // These BoxFileMigrators will contain the BoxFolders (Destination and Origin)
-            // If there is only one BoxFolder, we will assume that we couldn't find a matching destination folder.
-            // In this circumstance, we will write to our CSV log the name of Origin folder so we can resolve these name differences in future iterations.
-            ArrayList<BoxFileMigrator> boxFileMigrators = new ArrayList<BoxFileMigrator>();
-
-            Integer counter = 0;
-            // First we will create the BoxFolderMigrators by matching the folders we must migrate to the account folders by name.
-            for (BoxItem.Info itemInfo : migrateDirectory) {
-                // TODO Remove this for real migration.
-//                if (counter >= MAX_FOLDERS_TO_MIGRATE) {
-//                    break;
-//                }
-
-                if (itemInfo instanceof BoxFolder.Info) {
-                    BoxFolder destinationFolder = destinationFoldersByName.get(itemInfo.getName());
-
-                    boxFileMigrators.add(new BoxFileMigrator((BoxFolder)itemInfo.getResource(), destinationFolder));
-                }
-                counter++;
+            Iterable<BoxFileMigrator> migrators;
+            OriginFolderSource originFolders = null;
+            if (planFilePath == null) {
+                originFolders = getOriginFolderSource(journal);
+                migrators = originFolders;
+            } else {
+                // The plan is already sorted largest job first so the long copies start right away.
+                List<BoxFileMigrator> plannedMigrators = MigrationPlanner.readPlan(BoxApiService.getAPI(), new File(planFilePath), journal);
+                plannedMigrators.removeIf(migrator -> !shard.owns(migrator.OriginInfo.Id));
+                MigrationMetrics.get().setExpectedFolders(plannedMigrators.size());
+                migrators = plannedMigrators;
             }
-            System.out.println("Finished matching folders to migrate with their destination by name.");
 
-            // Next we will create additional BoxFolderMigrators with a provided CSV that contains the destination box folder Id to the box folder that needs to be migrated.
-//            boxFileMigrators.addAll(getBoxFileMigratorsFromFolderMappingFile());
+            // Additional BoxFolderMigrators can be created with a provided CSV that contains the destination box folder Id to the box folder that needs to be migrated.
+            // To migrate those, run the engine a second time over getBoxFileMigratorsFromFolderMappingFile().
 
             System.out.println("Beginning to migrate each folder...");
-            for (BoxFileMigrator migrator : boxFileMigrators) {
-                BoxFileMigrator.MigrationResult result = migrator.migrateFolders();
-                result.writeToCsv(writer);
-                writer.flush();
+            MigrationEngine engine = new MigrationEngine(MIGRATION_THREAD_COUNT, MAX_COPIES_PER_DESTINATION);
+            engine.setJournal(journal);
+            engine.setMaxDepth(MAX_DEPTH);
+            engine.setVerifier(verifier);
+            engine.setVerifyOnly(isVerifyOnly);
+            engine.run(migrators, writer);
+            if (originFolders != null) {
+                System.out.println("Skipped " + originFolders.getSkippedCount() + " folders already migrated.");
             }
         } catch (Exception ex) {
             System.out.println("Errors with Box Migration: " + ex.getMessage());
             ex.printStackTrace();
         } finally {
-            writer.flush();
             writer.close();
+            if (journal != null) {
+                journal.close();
+            }
+            saveFolderListingCache();
+            if (verifier != null) {
+                verifier.shutdown();
+            }
+            MigrationMetrics.get().stopReporting(metricsFile);
         }
         long endTime = System.nanoTime();
         long timeElapsed = (endTime - startTime)/1000000;
         long timeElapsedMinutes = timeElapsed / 60000;
         System.out.println("COMPLETED: Box File Migration. Duration: " + String.valueOf(timeElapsed) + " (ms) or " + String.valueOf(timeElapsedMinutes) + " minutes");
+        System.out.println(BoxApiService.getConnectionPool().getSummary());
     }
 
-    private static ArrayList<BoxFileMigrator> getBoxFileMigratorsFromFolderMappingFile() {
-        System.out.println("Begin matching folders to migrate with their destination by folder Ids.");
-        ArrayList<BoxFileMigrator> mappedFolderMigrators = new ArrayList<BoxFileMigrator>();
+    private static OriginFolderSource getOriginFolderSource(MigrationJournal journal) {
+        System.out.println("Begin matching folders to migrate with their destination by name");
+        // Get the folders in the directory where the files will be migrated to. (i.e. The destination folders)
+        // Group them by name. The names should correspond to the names of an account.
+        // The index keeps ids as longs and only builds a BoxFolder for the folders that get matched, so even a directory
+        // with millions of accounts stays small. Past its heap budget it spills to a memory-mapped file.
+        FolderNameIndex destinationFoldersByName = BoxApiService.getChildFolderIndex(ACCOUNTS_DIRECTORY);
+        System.out.println("Indexed " + destinationFoldersByName.size() + " destination folders using "
+                + destinationFoldersByName.getHeapBytes() / 1024 + " KB of heap" + (destinationFoldersByName.isMapped() ? " (memory-mapped)" : ""));
+
+        // The folders in the directory that contains the files which need to be migrated are listed a page at a time
+        // and matched to the account folders by name as they arrive. Each match becomes a BoxFileMigrator containing
+        // the BoxFolders (Destination and Origin).
+        // If there is only one BoxFolder, we will assume that we couldn't find a matching destination folder.
+        // In this circumstance, we will write to our CSV log the name of Origin folder so we can resolve these name differences in future iterations.
+        // Names that differ only in case, punctuation, accents or a suffix like "Inc." are matched too, and the
+        // confidence of each match is written to the log so the approximate ones can be reviewed.
+        // The matcher only normalizes and indexes the destination names once an origin folder's name misses an exact one.
+        FolderNameMatcher<BoxFolder> destinationMatcher = new FolderNameMatcher<BoxFolder>(destinationFoldersByName);
+        OriginFolderSource originFolders = new OriginFolderSource(BoxApiService.getAPI(), FILES_TO_MIGRATE_DIRECTORY, destinationMatcher, journal);
+        originFolders.setShard(shard);
+        return originFolders;
+    }
 
-        BufferedReader reader;
-        try {
-            reader = new BufferedReader(new FileReader(BOX_FOLDER_MAPPING_INFO_CSV));
-            reader.readLine(); // Skip the first line which should just be column names.
-
-            String mappingData = null;
-            while ((mappingData = reader.readLine()) != null) {
-                String[] splitData = mappingData.split(",");
-                String folderToMigrateId = splitData[1];
-                String destinationFolderId = splitData[2];
-
-                System.out.println("Folder To Migrate Id: " + folderToMigrateId);
-                System.out.println("Destination Folder Id: " + destinationFolderId);
-
-                BoxFolder folderToMigrate = new BoxFolder(BoxApiService.getAPI(), folderToMigrateId);
-                BoxFolder destinationFolder = null;
-                if (destinationFolderId != null && !destinationFolderId.isBlank() && (destinationFolderId.length() == 11)) {
-                    destinationFolder = new BoxFolder(BoxApiService.getAPI(), destinationFolderId);
-                }
+    private static File getJournalFile() {
+        // Each shard keeps its own journal so a failed shard can be re-run without touching the others.
+        String journalFileName = MIGRATION_JOURNAL_FILE_NAME.replace(".log", shard.getFileSuffix() + ".log");
+        return new File(DEFAULT_FILE_PATH + journalFileName);
+    }
 
-                BoxFileMigrator fileMigrator = new BoxFileMigrator(folderToMigrate, destinationFolder);
-                fileMigrator.print();
-                mappedFolderMigrators.add(fileMigrator);
+    private static void runMergeShardLogs(List<String> shardLogPaths) throws IOException {
+        ArrayList<File> shardLogs = new ArrayList<File>();
+        for (String shardLogPath : shardLogPaths) {
+            shardLogs.add(new File(shardLogPath));
+        }
+
+        // With no logs given, merge every shard log in the default log directory.
+        if (shardLogs.isEmpty()) {
+            File[] logsInPath = new File(DEFAULT_FILE_PATH).listFiles((directory, name) -> name.startsWith(DEFAULT_LOG_FILE_NAME + "-shard-") && name.endsWith(".csv"));
+            if (logsInPath != null) {
+                shardLogs.addAll(Arrays.asList(logsInPath));
             }
+        }
 
-            reader.close();
-        } catch (Exception ex) {
-            System.out.println("ERROR Building File Migrators From CSV: " + ex.getMessage());
-            return new ArrayList<BoxFileMigrator>();
+        if (shardLogs.isEmpty()) {
+            System.out.println("No shard logs found to merge.");
+            return;
         }
 
-        System.out.println("Finished matching folders to migrate with their destination by folder Ids.");
-        return mappedFolderMigrators;
+        File mergedLog = getNewUniqueFileInPath(DEFAULT_FILE_PATH, DEFAULT_LOG_FILE_NAME + "-merged");
+        MigrationLogMerger.merge(shardLogs, mergedLog, MIGRATION_LOG_COLUMNS);
     }
 
-    private static void runGenerateCsvOfBoxChildren() throws IOException {
-        // Establish a connection to the API.
+    private static void runBoxFileMigrationPlan() throws IOException {
+        File planFile = getNewUniqueFileInPath(DEFAULT_FILE_PATH, MIGRATION_PLAN_FILE_NAME + shard.getFileSuffix());
+        if (planFile == null) {
+            System.out.println("Unable to generate the plan file.");
+            return;
+        }
+
+        MigrationJournal journal = new MigrationJournal(getJournalFile());
         BoxApiService.getAPI();
+        loadFolderListingCache();
 
-        BoxFolder folderToList = new BoxFolder(BoxApiService.getAPI(), ACCOUNTS_DIRECTORY);
-        BoxFolder.Info folderInfo = folderToList.getInfo();
-        String baseFileName = folderInfo.getName() + "-contents-list";
+        try {
+            // Planning makes no copies. It only lists folders, and those listings are cached for the real run.
+            MigrationPlanner planner = new MigrationPlanner(MIGRATION_THREAD_COUNT);
+            planner.writePlan(getOriginFolderSource(journal), planFile);
+            System.out.println("Wrote migration plan " + planFile.getPath());
+        } finally {
+            journal.close();
+            saveFolderListingCache();
+        }
+        System.out.println(BoxApiService.getConnectionPool().getSummary());
+    }
+
+    /**
+     * @param planFilePath The plan to execute, or null for the newest plan this shard wrote.
+     */
+    private static void runExecutePlan(String planFilePath) throws IOException {
+        if (planFilePath == null) {
+            File planFile = getLatestFileInPath(DEFAULT_FILE_PATH, MIGRATION_PLAN_FILE_NAME + shard.getFileSuffix());
+            if (planFile == null) {
+                System.out.println("No migration plan found. Run \"plan\" first or give the plan file to execute.");
+                return;
+            }
+            planFilePath = planFile.getPath();
+        }
+
+        runBoxFileMigration(planFilePath, false);
+    }
+
+    /**
+     * @param planFilePath The plan whose pairings to follow, or null to pair the folders by name like a migration does.
+     */
+    private static void runEventStreamSync(String planFilePath) throws IOException, InterruptedException {
+        BoxApiService.getAPI();
+        loadFolderListingCache();
+
+        // Only origin folders that have a destination are followed. Unlike a migration, finished folders are included.
+        Iterable<BoxFileMigrator> pairings = planFilePath == null
+                ? getOriginFolderSource(null)
+                : MigrationPlanner.readPlan(BoxApiService.getAPI(), new File(planFilePath), null);
+        Map<String, FolderSnapshot> destinationByOriginId = new HashMap<String, FolderSnapshot>();
+        for (BoxFileMigrator pairing : pairings) {
+            if (pairing.DestinationInfo != null && shard.owns(pairing.OriginInfo.Id)) {
+                destinationByOriginId.put(pairing.OriginInfo.Id, pairing.DestinationInfo);
+            }
+        }
+
+        // Sync the changed folders as deep as a migration would, and save the stream position per shard.
+        File positionFile = new File(DEFAULT_FILE_PATH + EVENT_STREAM_POSITION_FILE_NAME + shard.getFileSuffix() + ".txt");
+        EventStreamSync sync = new EventStreamSync(BoxApiService.getAPI(), destinationByOriginId, positionFile, MAX_DEPTH,
+                EventStreamSync.DEFAULT_BATCH_INTERVAL_MILLIS);
+
+        // Runs until the process is stopped. The shutdown hook lets the last batch finish and its position be saved.
+        Thread syncThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            sync.stop();
+            try {
+                syncThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
 
-        // Set up our CSV log file that will contain the results of each migration.
-        File logFile = null;
-        CSVWriter writer = null;
         try {
-            logFile = getNewUniqueFileInPath(BOX_CHILD_LIST_FILE_PATH, baseFileName);
+            sync.run();
+        } finally {
+            saveFolderListingCache();
+        }
+        System.out.println(BoxApiService.getConnectionPool().getSummary());
+    }
 
-            writer = new CSVWriter(new FileWriter(logFile));
-            writer.writeNext(new String[] { "Folder Name", "Folder ID" } );
-        } catch (Exception ex) {
-            System.out.println("Error creating the log file: " + ex.getMessage());
-            return;
+    private static File getFolderListingCacheFile() {
+        // Each shard keeps its own cache, so shards saving at the same time never write over each other.
+        return new File(DEFAULT_FILE_PATH + FOLDER_LISTING_CACHE_FILE_NAME.replace(".bin", shard.getFileSuffix() + ".bin"));
+    }
+
+    private static void loadFolderListingCache() {
+        try {
+            BoxApiService.getListingCache().load(getFolderListingCacheFile());
+        } catch (IOException ex) {
+            // The cache only saves time, so carry on without it.
+            System.out.println("Unable to load the folder listing cache. Error: " + ex.getMessage());
         }
+    }
 
-        // If there is some error creating the csv file we need to generate, don't try to do the migration.
-        if (logFile == null || writer == null) {
-            System.out.println("Unable to generate the log file.");
-            return;
+    private static void saveFolderListingCache() {
+        try {
+            BoxApiService.getListingCache().save(getFolderListingCacheFile());
+        } catch (IOException ex) {
+            System.out.println("Unable to save the folder listing cache. Error: " + ex.getMessage());
         }
+    }
 
+    private static List<BoxFileMigrator> getBoxFileMigratorsFromFolderMappingFile() {
+        System.out.println("Begin matching folders to migrate with their destination by folder Ids.");
+
+        // Rows are parsed as real CSV (quoted names with commas are fine), de-duplicated, and every folder id is checked
+        // against Box concurrently. Rows that can't be used go to the reject file instead of failing the whole load.
+        File rejectFile = new File(DEFAULT_FILE_PATH + LEGACY_ID_MAPPING_REJECTS_FILE_NAME);
+        FolderMappingLoader loader = new FolderMappingLoader(BoxApiService.getAPI(), FolderMappingLoader.DEFAULT_THREAD_COUNT);
+        List<BoxFileMigrator> mappedFolderMigrators;
         try {
-            for (BoxItem.Info itemInfo : folderToList) {
-                writer.writeNext(new String[] { itemInfo.getName(), itemInfo.getID() });
-            }
+            mappedFolderMigrators = loader.load(new File(BOX_FOLDER_MAPPING_INFO_CSV), rejectFile);
         } catch (Exception ex) {
-            System.out.println("Errors with Box Migration: " + ex.getMessage());
-            ex.printStackTrace();
-        } finally {
-            writer.flush();
-            writer.close();
+            System.out.println("ERROR Building File Migrators From CSV: " + ex.getMessage());
+            return new ArrayList<BoxFileMigrator>();
         }
+
+        System.out.println("Finished matching folders to migrate with their destination by folder Ids.");
+        return mappedFolderMigrators;
+    }
+
+    /**
+     * @param arguments The folder to list (the Accounts directory by default), how many levels to list (all by default)
+     *                  and the output format, "csv" (the default) or "binary".
+     */
+    private static void runBoxInventory(List<String> inventoryArguments) throws IOException, InterruptedException {
+        ArrayList<String> arguments = new ArrayList<String>(inventoryArguments);
+        boolean isFreshRun = arguments.remove("--fresh");
+        String folderId = arguments.size() > 0 ? arguments.get(0) : ACCOUNTS_DIRECTORY;
+        int maxDepth = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : InventoryCrawler.UNLIMITED_DEPTH;
+        InventoryCrawler.Format format = arguments.size() > 2 && arguments.get(2).equals("binary") ? InventoryCrawler.Format.BINARY : InventoryCrawler.Format.CSV;
+
+        // Establish a connection to the API.
+        BoxApiService.getAPI();
+
+        // The file names only depend on the folder, so running the same inventory again resumes it. The crawler rejects a
+        // frontier log left by a different depth, and deletes the log once the crawl is complete.
+        String baseFileName = BOX_CHILD_LIST_FILE_PATH + INVENTORY_FILE_NAME + "-" + folderId;
+        File inventoryFile = new File(baseFileName + (format == InventoryCrawler.Format.CSV ? ".csv" : ".bin"));
+        File frontierFile = new File(baseFileName + (format == InventoryCrawler.Format.CSV ? "-csv" : "-bin") + ".frontier");
+
+        InventoryCrawler crawler = new InventoryCrawler(inventoryFile, frontierFile, format, maxDepth, InventoryCrawler.DEFAULT_PARALLELISM);
+        crawler.crawl(folderId, isFreshRun);
+        System.out.println("Wrote inventory " + inventoryFile.getPath());
+        System.out.println(BoxApiService.getConnectionPool().getSummary());
     }
 
     private static File getNewUniqueFileInPath(String filePath, String fileName) {
@@ -232,6 +427,28 @@ public class Main {
         return null;
     }
 
+    /**
+     * @description Find the newest of the files getNewUniqueFileInPath() made for this name, e.g. "plan.csv", "plan-1.csv".
+     *              getNewUniqueFileInPath() reuses the first free counter, so the newest file is the one written last,
+     *              not the one with the highest counter.
+     * @return The file, or null if there is none.
+     */
+    private static File getLatestFileInPath(String filePath, String fileName) {
+        Pattern namePattern = Pattern.compile(Pattern.quote(fileName) + "(-\\d+)?\\.csv");
+        File[] files = new File(filePath).listFiles((directory, name) -> namePattern.matcher(name).matches());
+        if (files == null || files.length == 0) {
+            return null;
+        }
+
+        File latestFile = files[0];
+        for (File file : files) {
+            if (file.lastModified() > latestFile.lastModified()) {
+                latestFile = file;
+            }
+        }
+        return latestFile;
+    }
+
     /**
      * @description This code was just an example used to demonstrate how to connect to the box API and read folder contents.
      */
@@ -250,12 +467,9 @@ public class Main {
     }
 
     private static void listFolder(BoxFolder folder, int depth) {
+        // Every item in the folder shares the same indent, so build it once.
+        String indent = "    ".repeat(depth);
         for (BoxItem.Info itemInfo : folder) {
-            String indent = "";
-            for (int i = 0; i < depth; i++) {
-                indent += "    ";
-            }
-
             System.out.println(indent + itemInfo.getName() + ": " + itemInfo.getID());
             if (itemInfo instanceof BoxFolder.Info) {
                 BoxFolder childFolder = (BoxFolder) itemInfo.getResource();
@@ -0,0 +1,246 @@
+package com.migration;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @description Runs many BoxFileMigrators at once on a bounded worker pool. Results are written to the CSV log in
+ *              the same order the migrators were supplied, no matter which one finishes first.
+ */
+public class MigrationEngine {
+
+    public static final int DEFAULT_THREAD_COUNT = 8;
+    public static final int DEFAULT_MAX_COPIES_PER_DESTINATION = 2;
+
+    // Marks the end of the discovered migrations. Compared by reference only.
+    private static final Future<BoxFileMigrator.MigrationResult> END_OF_MIGRATIONS = new CompletableFuture<BoxFileMigrator.MigrationResult>();
+
+    private final int threadCount;
+    private final DestinationCopyLimiter copyLimiter;
+    private MigrationJournal journal;
+    private int maxDepth = BoxApiService.DEFAULT_MAX_DEPTH;
+    private FolderVerifier verifier;
+    private boolean isVerifyOnly = false;
+
+    public MigrationEngine() {
+        this(DEFAULT_THREAD_COUNT, DEFAULT_MAX_COPIES_PER_DESTINATION);
+    }
+
+    public MigrationEngine(int threadCount, int maxCopiesPerDestination) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+
+        this.threadCount = threadCount;
+        this.copyLimiter = new DestinationCopyLimiter(maxCopiesPerDestination);
+    }
+
+    /**
+     * @description Record finished work in the given journal, and skip work it says is already done.
+     */
+    public void setJournal(MigrationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @description How many levels below each origin folder to descend. See BoxFileMigrator.MaxDepth.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The max depth can not be negative.");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @description Verify each migrated folder against its origin with the given verifier. See BoxFileMigrator.Verifier.
+     */
+    public void setVerifier(FolderVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    /**
+     * @description Only verify the folders that are already in the destination instead of migrating. Needs a verifier.
+     */
+    public void setVerifyOnly(boolean isVerifyOnly) {
+        this.isVerifyOnly = isVerifyOnly;
+    }
+
+    /**
+     * @description Migrate every folder and hand each result to the log writer in input order.
+     *              The stages run as a pipeline: a discovery thread pulls migrators from the source and hands them to the
+     *              worker pool, while the calling thread passes finished results to the log writer. At most (threadCount * 2) migrations
+     *              are queued or running at once, so a slow writer or a slow Box holds back discovery instead of
+     *              letting memory grow with the size of the source.
+     * @return The number of origin folders that were processed.
+     */
+    public int run(Iterable<BoxFileMigrator> migrators, MigrationLogWriter logWriter) throws IOException {
+        if (isVerifyOnly && verifier == null) {
+            throw new IllegalStateException("A verifier is needed to verify folders.");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        BlockingQueue<Future<BoxFileMigrator.MigrationResult>> pending = new ArrayBlockingQueue<Future<BoxFileMigrator.MigrationResult>>(threadCount * 2);
+        AtomicLong firstCopyStartNanos = new AtomicLong();
+        AtomicReference<RuntimeException> discoveryError = new AtomicReference<RuntimeException>();
+        int processed = 0;
+        long startTime = System.nanoTime();
+        resetPeakHeapUsage();
+
+        Thread discovery = new Thread(() -> {
+            try {
+                for (BoxFileMigrator migrator : migrators) {
+                    pending.put(executor.submit(() -> {
+                        firstCopyStartNanos.compareAndSet(0, System.nanoTime());
+                        migrator.MaxDepth = maxDepth;
+                        migrator.Verifier = verifier;
+                        try {
+                            return isVerifyOnly ? migrator.verifyFolders() : migrator.migrateFolders(copyLimiter, journal);
+                        } catch (RuntimeException ex) {
+                            // e.g. listing the origin failed. Give the origin an error row so it shows up in the log.
+                            System.out.println("Error migrating folder " + migrator.OriginInfo.Name + ": " + ex.getMessage());
+                            return migrator.getErrorResult(ex);
+                        }
+                    }));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                discoveryError.set(ex);
+            } finally {
+                putQuietly(pending, END_OF_MIGRATIONS);
+            }
+        }, "migration-discovery");
+        discovery.setDaemon(true);
+        discovery.start();
+
+        try {
+            while (true) {
+                Future<BoxFileMigrator.MigrationResult> next = pending.take();
+                if (next == END_OF_MIGRATIONS) {
+                    break;
+                }
+
+                writeResult(next, logWriter);
+                processed++;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a migration to finish.", ex);
+        } finally {
+            discovery.interrupt();
+            executor.shutdownNow();
+        }
+
+        if (discoveryError.get() != null) {
+            // Everything discovered before the failure has been migrated and logged. Surface the error to the caller.
+            throw discoveryError.get();
+        }
+
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+        double foldersPerSecond = processed * 1000.0 / elapsedMillis;
+        System.out.println("Migrated " + processed + " folders using " + threadCount + " threads. Throughput: "
+                + String.format("%.2f", foldersPerSecond) + " folders/s");
+
+        if (firstCopyStartNanos.get() != 0) {
+            System.out.println("Time to first copy: " + (firstCopyStartNanos.get() - startTime) / 1000000 + " (ms)");
+        }
+        System.out.println("Peak heap usage: " + getPeakHeapUsage() / (1024 * 1024) + " MB");
+
+        return processed;
+    }
+
+    private static void putQuietly(BlockingQueue<Future<BoxFileMigrator.MigrationResult>> queue, Future<BoxFileMigrator.MigrationResult> item) {
+        // The writer keeps draining the queue, so this only waits while it is full.
+        boolean isInterrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException ex) {
+                isInterrupted = true;
+            }
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeapUsage() {
+        long peakBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peakBytes;
+    }
+
+    private void writeResult(Future<BoxFileMigrator.MigrationResult> future, MigrationLogWriter logWriter) throws IOException {
+        BoxFileMigrator.MigrationResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a migration to finish.", ex);
+        } catch (ExecutionException ex) {
+            // Exceptions become error results in run(), so this is an Error such as running out of memory.
+            throw new IOException("Migration failed: " + ex.getCause(), ex.getCause());
+        }
+
+        MigrationMetrics.get().recordFolder(result);
+        logWriter.write(result);
+    }
+
+    /**
+     * @description Caps the number of copies that may be in flight into any single destination folder.
+     *              Several migrators can share a destination (e.g. from the legacy id mapping file), and Box
+     *              serializes writes into the same folder, so piling on more requests only produces conflicts.
+     */
+    public static class DestinationCopyLimiter {
+
+        private final int maxCopiesPerDestination;
+        private final ConcurrentHashMap<String, Semaphore> permitsByDestination = new ConcurrentHashMap<String, Semaphore>();
+
+        public DestinationCopyLimiter(int maxCopiesPerDestination) {
+            if (maxCopiesPerDestination < 1) {
+                throw new IllegalArgumentException("The max copies per destination must be at least 1.");
+            }
+            this.maxCopiesPerDestination = maxCopiesPerDestination;
+        }
+
+        public void acquire(String destinationFolderId) throws InterruptedException {
+            getPermits(destinationFolderId).acquire();
+        }
+
+        public void release(String destinationFolderId) {
+            getPermits(destinationFolderId).release();
+        }
+
+        private Semaphore getPermits(String destinationFolderId) {
+            return permitsByDestination.computeIfAbsent(destinationFolderId, id -> new Semaphore(maxCopiesPerDestination, true));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.migration;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description An append-only record of finished work so that a run which died part way through can pick up where it
+ *              left off without asking Box what was already copied. Each line is "originFolderId,migratedFolderId".
+ *              A migrated folder id of "*" means every subfolder of the origin folder has been handled.
+ */
+public class MigrationJournal implements Closeable {
+
+    public static final int DEFAULT_SYNC_BATCH_SIZE = 50;
+
+    private static final String ORIGIN_COMPLETE_MARKER = "*";
+    private static final String SEPARATOR = ",";
+
+    private final FileChannel channel;
+    private final int syncBatchSize;
+    private final Set<String> completedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private int unsyncedRecords = 0;
+
+    public MigrationJournal(File journalFile) throws IOException {
+        this(journalFile, DEFAULT_SYNC_BATCH_SIZE);
+    }
+
+    public MigrationJournal(File journalFile, int syncBatchSize) throws IOException {
+        if (syncBatchSize < 1) {
+            throw new IllegalArgumentException("The sync batch size must be at least 1.");
+        }
+
+        this.syncBatchSize = syncBatchSize;
+        replay(journalFile);
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @description Load the finished work and cut off a torn last record. A crash can leave a record without its newline,
+     *              and it may be a prefix of the real one (e.g. "123,45" for "123,456"), so it is not trusted. It is also
+     *              removed from the file: otherwise the next record would be appended onto the end of it.
+     */
+    private void replay(File journalFile) throws IOException {
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        Set<String> replayedKeys = new HashSet<String>();
+        long completeLength = 0;
+        long length = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(journalFile))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                length++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                // Anything that doesn't have both ids is ignored.
+                String[] ids = new String(line.toByteArray(), StandardCharsets.UTF_8).split(SEPARATOR);
+                if (ids.length == 2 && !ids[0].isBlank() && !ids[1].isBlank()) {
+                    replayedKeys.add(getKey(ids[0], ids[1]));
+                }
+                line.reset();
+                completeLength = length;
+            }
+        }
+
+        if (completeLength < length) {
+            try (FileChannel journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                journal.truncate(completeLength);
+                journal.force(false);
+            }
+            System.out.println("Removed a torn record of " + (length - completeLength) + " bytes from the end of migration journal " + journalFile.getPath());
+        }
+
+        completedKeys.addAll(replayedKeys);
+        System.out.println("Replayed " + replayedKeys.size() + " completed entries from migration journal " + journalFile.getPath());
+    }
+
+    public boolean isOriginComplete(String originFolderId) {
+        return isComplete(originFolderId, ORIGIN_COMPLETE_MARKER);
+    }
+
+    public boolean isComplete(String originFolderId, String migratedFolderId) {
+        return completedKeys.contains(getKey(originFolderId, migratedFolderId));
+    }
+
+    public void markOriginComplete(String originFolderId) throws IOException {
+        markComplete(originFolderId, ORIGIN_COMPLETE_MARKER);
+    }
+
+    public void markComplete(String originFolderId, String migratedFolderId) throws IOException {
+        if (!completedKeys.add(getKey(originFolderId, migratedFolderId))) {
+            return;
+        }
+
+        ByteBuffer record = ByteBuffer.wrap((originFolderId + SEPARATOR + migratedFolderId + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+
+            unsyncedRecords++;
+            if (unsyncedRecords >= syncBatchSize) {
+                sync();
+            }
+        }
+    }
+
+    /**
+     * @description Force everything written so far to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsyncedRecords > 0) {
+            channel.force(false);
+            unsyncedRecords = 0;
+        }
+    }
+
+    public int getCompletedCount() {
+        return completedKeys.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private static String getKey(String originFolderId, String migratedFolderId) {
+        return originFolderId + SEPARATOR + migratedFolderId;
+    }
+}
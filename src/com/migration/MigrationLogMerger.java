@@ -0,0 +1,76 @@
+package com.migration;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description Combines the CSV logs written by sharded workers into one report with the same columns as a single run.
+ *              If a shard was re-run, an origin folder can appear in more than one log. Only the rows from the newest
+ *              log that mentions it are kept, so the merged report reflects the last attempt at every folder. The logs
+ *              are read and written as UTF-8, like MigrationLogWriter writes them.
+ */
+public class MigrationLogMerger {
+
+    private static final int ORIGIN_NAME_COLUMN = 0;
+    private static final int ORIGIN_ID_COLUMN = 1;
+
+    private MigrationLogMerger() {}
+
+    /**
+     * @return The number of rows written to the merged log.
+     */
+    public static int merge(List<File> shardLogs, File mergedLog, String[] columns) throws IOException {
+        // Newest first, so the first log to mention an origin folder is the one whose rows win.
+        List<File> logsNewestFirst = new ArrayList<File>(shardLogs);
+        logsNewestFirst.sort(Comparator.comparingLong(File::lastModified).reversed());
+
+        Map<String, File> logByOriginId = new HashMap<String, File>();
+        List<String[]> rows = new ArrayList<String[]>();
+
+        for (File shardLog : logsNewestFirst) {
+            try (CSVReader reader = new CSVReader(new FileReader(shardLog, StandardCharsets.UTF_8))) {
+                reader.readNext(); // Skip the column names.
+
+                String[] row;
+                while ((row = reader.readNext()) != null) {
+                    if (row.length <= ORIGIN_ID_COLUMN) {
+                        continue;
+                    }
+
+                    File owningLog = logByOriginId.putIfAbsent(row[ORIGIN_ID_COLUMN], shardLog);
+                    if (owningLog == null || owningLog.equals(shardLog)) {
+                        rows.add(row);
+                    }
+                }
+            } catch (CsvValidationException ex) {
+                throw new IOException("Unable to read shard log " + shardLog.getPath() + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        // Order by origin folder the way a single run lists them. The sort is stable, so rows for one origin keep their order.
+        rows.sort(Comparator.comparing((String[] row) -> row[ORIGIN_NAME_COLUMN], String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(row -> row[ORIGIN_ID_COLUMN]));
+
+        try (CSVWriter writer = new CSVWriter(new FileWriter(mergedLog, StandardCharsets.UTF_8))) {
+            writer.writeNext(columns);
+            for (String[] row : rows) {
+                writer.writeNext(row);
+            }
+        }
+
+        System.out.println("Merged " + rows.size() + " rows from " + shardLogs.size() + " shard logs into " + mergedLog.getPath());
+        return rows.size();
+    }
+}
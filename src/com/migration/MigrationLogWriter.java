@@ -0,0 +1,172 @@
+package com.migration;
+
+import com.opencsv.CSVWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description Writes migration results to the CSV log on its own thread. Results are queued by the migration and
+ *              written in the order they were queued. The file is flushed after a number of rows or an amount of time,
+ *              whichever comes first, instead of after every folder.
+ */
+public class MigrationLogWriter implements Closeable {
+
+    public static final int DEFAULT_ROWS_PER_FLUSH = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /**
+     * @description How hard to try to get rows onto disk before a crash.
+     *              BUFFERED - only flush when the write buffer fills and on close. Fastest, can lose the tail of the log.
+     *              FLUSH    - hand rows to the OS after each batch. Survives the JVM dying, not the machine.
+     *              FSYNC    - force rows to disk after each batch. Survives the machine dying.
+     */
+    public enum Durability { BUFFERED, FLUSH, FSYNC }
+
+    // Marks the end of the queue. Compared by reference only.
+    private static final Object END_OF_RESULTS = new Object();
+
+    private final FileOutputStream outputStream;
+    private final CSVWriter writer;
+    private final Durability durability;
+    private final int rowsPerFlush;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<Object> queue;
+    private final Thread writerThread;
+
+    private volatile IOException writeError;
+    private long writtenRows = 0;
+
+    public MigrationLogWriter(File logFile, String[] columns) throws IOException {
+        this(logFile, columns, Durability.FLUSH, DEFAULT_ROWS_PER_FLUSH, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public MigrationLogWriter(File logFile, String[] columns, Durability durability, int rowsPerFlush, long flushIntervalMillis) throws IOException {
+        if (rowsPerFlush < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("The rows per flush and flush interval must be at least 1.");
+        }
+
+        this.durability = durability;
+        this.rowsPerFlush = rowsPerFlush;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.queue = new LinkedBlockingQueue<Object>(DEFAULT_QUEUE_CAPACITY);
+
+        outputStream = new FileOutputStream(logFile);
+        writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+        writer.writeNext(columns);
+
+        writerThread = new Thread(this::writeQueuedResults, "migration-log-writer");
+        writerThread.start();
+    }
+
+    /**
+     * @description Queue a result to be written. Only waits if the writer has fallen a full queue behind.
+     */
+    public void write(BoxFileMigrator.MigrationResult result) throws IOException {
+        if (writeError != null) {
+            throw writeError;
+        }
+
+        try {
+            queue.put(result);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing a migration result.", ex);
+        }
+    }
+
+    private void writeQueuedResults() {
+        String[] csvRow = new String[BoxFileMigrator.CSV_COLUMN_COUNT];
+        long lastFlushNanos = System.nanoTime();
+        long unflushedRows = 0;
+
+        try {
+            while (true) {
+                long untilNextFlush = flushIntervalNanos - (System.nanoTime() - lastFlushNanos);
+                Object next = queue.poll(Math.max(0, untilNextFlush), TimeUnit.NANOSECONDS);
+
+                if (next == END_OF_RESULTS) {
+                    break;
+                }
+
+                if (next != null) {
+                    BoxFileMigrator.MigrationResult result = (BoxFileMigrator.MigrationResult)next;
+                    long writeStartNanos = System.nanoTime();
+                    result.writeToCsv(writer, csvRow);
+                    MigrationMetrics.get().recordLatency("csvWrite", writeStartNanos, true);
+                    unflushedRows += result.FileCopyResults.size();
+                    writtenRows += result.FileCopyResults.size();
+                }
+
+                boolean isBatchFull = unflushedRows >= rowsPerFlush;
+                boolean isIntervalUp = System.nanoTime() - lastFlushNanos >= flushIntervalNanos;
+                if (unflushedRows > 0 && (isBatchFull || isIntervalUp)) {
+                    flush();
+                    unflushedRows = 0;
+                }
+                if (isBatchFull || isIntervalUp) {
+                    lastFlushNanos = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            System.out.println("Error writing the migration log: " + ex.getMessage());
+            writeError = ex;
+            // Drop whatever is queued so nobody waits on a full queue. write() fails from here on.
+            queue.clear();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (durability == Durability.BUFFERED) {
+            return;
+        }
+
+        long flushStartNanos = System.nanoTime();
+        writer.flush();
+        if (durability == Durability.FSYNC) {
+            outputStream.getFD().sync();
+        }
+        MigrationMetrics.get().recordLatency("csvFlush", flushStartNanos, true);
+    }
+
+    /**
+     * @description Write everything still queued, then flush and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writerThread.isAlive()) {
+                queue.put(END_OF_RESULTS);
+            }
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            writer.flush();
+            if (durability == Durability.FSYNC) {
+                outputStream.getFD().sync();
+            }
+        } finally {
+            writer.close();
+        }
+
+        System.out.println("Wrote " + writtenRows + " rows to the migration log.");
+
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.migration;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @description Live numbers for a migration run: a latency histogram per operation (Box API calls, listing pages,
+ *              copies, CSV writes), counts by CopyResult.Status, and a rolling folders/s rate with an ETA. A background
+ *              thread prints a summary and rewrites a JSON metrics file on an interval. Every timed operation is also
+ *              emitted as a JFR event, which costs nothing unless a recording is running.
+ */
+public class MigrationMetrics {
+
+    public static final long DEFAULT_REPORT_INTERVAL_SECONDS = 30;
+
+    // The rolling rate is measured over this window.
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final MigrationMetrics instance = new MigrationMetrics();
+
+    private final Map<String, LatencyHistogram> histogramsByOperation = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final Map<String, LongAdder> countsByStatus = new ConcurrentHashMap<String, LongAdder>();
+    private final LongAdder completedFolders = new LongAdder();
+    private final AtomicLong expectedFolders = new AtomicLong();
+    private final Deque<long[]> rateSamples = new ArrayDeque<long[]>();
+    private final long startNanos = System.nanoTime();
+
+    private ScheduledExecutorService reporter;
+
+    private MigrationMetrics() {}
+
+    public static MigrationMetrics get() {
+        return instance;
+    }
+
+    /**
+     * @description Record how long one operation took.
+     */
+    public void recordLatency(String operation, long startNanos, boolean isSuccess) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        histogramsByOperation.computeIfAbsent(operation, name -> new LatencyHistogram()).recordNanos(elapsedNanos);
+
+        OperationEvent event = new OperationEvent();
+        if (event.isEnabled()) {
+            event.Operation = operation;
+            event.DurationMicros = elapsedNanos / 1000;
+            event.Success = isSuccess;
+            event.commit();
+        }
+    }
+
+    /**
+     * @description Record a finished origin folder and the status of each of its copy results.
+     */
+    public void recordFolder(BoxFileMigrator.MigrationResult result) {
+        completedFolders.increment();
+        for (BoxFileMigrator.CopyResult copyResult : result.FileCopyResults) {
+            countsByStatus.computeIfAbsent(String.valueOf(copyResult.Status), status -> new LongAdder()).increment();
+        }
+
+        FolderMigratedEvent event = new FolderMigratedEvent();
+        if (event.isEnabled()) {
+            event.OriginFolderId = result.OriginFolderInfo.Id;
+            event.CopyResultCount = result.FileCopyResults.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * @description Set how many origin folders the run is expected to process, so an ETA can be shown.
+     */
+    public void setExpectedFolders(long folderCount) {
+        expectedFolders.set(folderCount);
+    }
+
+    public synchronized void startReporting(File metricsFile, long intervalSeconds) {
+        if (reporter != null) {
+            return;
+        }
+
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "migration-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> report(metricsFile), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @description Stop the periodic reports and write one final report.
+     */
+    public synchronized void stopReporting(File metricsFile) {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        report(metricsFile);
+    }
+
+    private void report(File metricsFile) {
+        try {
+            System.out.println(getSummary());
+            if (metricsFile != null) {
+                writeMetricsFile(metricsFile);
+            }
+        } catch (Exception ex) {
+            // Metrics must never take down the migration.
+            System.out.println("Unable to report migration metrics. Error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @description Folders per second over the last minute.
+     */
+    public synchronized double getFoldersPerSecond() {
+        long now = System.nanoTime();
+        long completed = completedFolders.sum();
+        rateSamples.addLast(new long[] {now, completed});
+        while (rateSamples.size() > 2 && now - rateSamples.peekFirst()[0] > RATE_WINDOW_NANOS) {
+            rateSamples.removeFirst();
+        }
+
+        long[] oldest = rateSamples.peekFirst();
+        if (oldest[0] == now) {
+            // First sample: fall back to the average since the start.
+            return completed * 1e9 / Math.max(1, now - startNanos);
+        }
+        return (completed - oldest[1]) * 1e9 / (now - oldest[0]);
+    }
+
+    public String getSummary() {
+        long completed = completedFolders.sum();
+        double foldersPerSecond = getFoldersPerSecond();
+        StringBuilder summary = new StringBuilder();
+        summary.append("METRICS: ").append(completed).append(" folders done, ")
+                .append(String.format("%.2f", foldersPerSecond)).append(" folders/s");
+
+        long remaining = expectedFolders.get() - completed;
+        if (expectedFolders.get() > 0 && foldersPerSecond > 0) {
+            summary.append(", ETA ").append(Math.max(0, (long)(remaining / foldersPerSecond / 60))).append(" minutes");
+        }
+
+        summary.append(System.lineSeparator()).append("  Statuses: ").append(getStatusCounts());
+        for (Map.Entry<String, LatencyHistogram> operation : new TreeMap<String, LatencyHistogram>(histogramsByOperation).entrySet()) {
+            LatencyHistogram histogram = operation.getValue();
+            summary.append(System.lineSeparator()).append(String.format("  %-20s count %8d  p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms",
+                    operation.getKey(), histogram.getCount(), histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0, histogram.getMaxMicros() / 1000.0));
+        }
+        return summary.toString();
+    }
+
+    private Map<String, Long> getStatusCounts() {
+        Map<String, Long> statusCounts = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> status : countsByStatus.entrySet()) {
+            statusCounts.put(status.getKey(), status.getValue().sum());
+        }
+        return statusCounts;
+    }
+
+    private void writeMetricsFile(File metricsFile) throws IOException {
+        // Write to a temp file and move it into place so readers never see a half-written file.
+        File tempFile = new File(metricsFile.getPath() + ".tmp");
+        // JSON is UTF-8 and its numbers always use a "." whatever the machine's locale.
+        try (Writer writer = new FileWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"elapsedSeconds\": " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos) + ",\n");
+            writer.write("  \"completedFolders\": " + completedFolders.sum() + ",\n");
+            writer.write("  \"expectedFolders\": " + expectedFolders.get() + ",\n");
+            writer.write("  \"foldersPerSecond\": " + String.format(Locale.ROOT, "%.3f", getFoldersPerSecond()) + ",\n");
+
+            writer.write("  \"statuses\": {");
+            String separator = "";
+            for (Map.Entry<String, Long> status : getStatusCounts().entrySet()) {
+                writer.write(separator + "\n    \"" + escape(status.getKey()) + "\": " + status.getValue());
+                separator = ",";
+            }
+            writer.write("\n  },\n");
+
+            writer.write("  \"operations\": {");
+            separator = "";
+            for (Map.Entry<String, LatencyHistogram> operation : new TreeMap<String, LatencyHistogram>(histogramsByOperation).entrySet()) {
+                LatencyHistogram histogram = operation.getValue();
+                writer.write(separator + "\n    \"" + escape(operation.getKey()) + "\": {\"count\": " + histogram.getCount()
+                        + ", \"meanMicros\": " + String.format(Locale.ROOT, "%.1f", histogram.getMeanMicros())
+                        + ", \"p50Micros\": " + histogram.getPercentileMicros(50)
+                        + ", \"p99Micros\": " + histogram.getPercentileMicros(99)
+                        + ", \"maxMicros\": " + histogram.getMaxMicros() + "}");
+                separator = ",";
+            }
+            writer.write("\n  }\n}\n");
+        }
+        Files.move(tempFile.toPath(), metricsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Name("com.migration.Operation")
+    @Label("Migration Operation")
+    @Category("Box Migration")
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String Operation;
+
+        @Label("Duration (us)")
+        long DurationMicros;
+
+        @Label("Success")
+        boolean Success;
+    }
+
+    @Name("com.migration.FolderMigrated")
+    @Label("Folder Migrated")
+    @Category("Box Migration")
+    static class FolderMigratedEvent extends Event {
+        @Label("Origin Folder ID")
+        String OriginFolderId;
+
+        @Label("Copy Results")
+        int CopyResultCount;
+    }
+}
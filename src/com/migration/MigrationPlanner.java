@@ -0,0 +1,260 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @description Works out what a migration would do without copying anything. For every pairing it counts the
+ *              subfolders and bytes to move and estimates the API calls and time it will take, then writes a plan file.
+ *              A plan can then be executed with the largest jobs scheduled first, so one huge account folder doesn't
+ *              start last and stretch the whole run.
+ */
+public class MigrationPlanner {
+
+    public static final String[] PLAN_COLUMNS = new String[] {"Origin Folder ID", "Origin Folder Name", "Destination Folder ID",
+            "Destination Folder Name", "Match Confidence", "Subfolder Count", "Subfolders To Copy", "Total Bytes",
+            "Estimated API Calls", "Estimated Duration (ms)", "Planning Error"};
+
+    // Rough costs used for the estimates. A copy is done by Box server side, so its time grows with the bytes moved.
+    private static final long ESTIMATED_MILLIS_PER_CALL = 300;
+    private static final long ESTIMATED_COPY_BYTES_PER_SECOND = 50L * 1024 * 1024;
+    private static final int LISTING_PAGE_SIZE = 1000;
+
+    private final int threadCount;
+
+    public MigrationPlanner(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be at least 1.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @description Plan every migrator and write the plan, in input order, to the given file.
+     * @return The number of jobs in the plan.
+     */
+    public int writePlan(Iterable<BoxFileMigrator> migrators, File planFile) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Deque<Future<PlannedJob>> pending = new ArrayDeque<Future<PlannedJob>>();
+        PlanTotals totals = new PlanTotals();
+
+        try (CSVWriter writer = new CSVWriter(new FileWriter(planFile, StandardCharsets.UTF_8))) {
+            writer.writeNext(PLAN_COLUMNS);
+
+            for (BoxFileMigrator migrator : migrators) {
+                pending.addLast(executor.submit(() -> planJob(migrator)));
+                if (pending.size() >= threadCount * 2) {
+                    writeJob(pending.removeFirst(), writer, totals);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeJob(pending.removeFirst(), writer, totals);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        totals.print(threadCount);
+        return totals.JobCount;
+    }
+
+    /**
+     * @description Estimate one job. A job that can't be estimated is still returned, with the error, so it stays in the
+     *              plan instead of silently dropping out of the migration.
+     */
+    private PlannedJob planJob(BoxFileMigrator migrator) {
+        PlannedJob job = new PlannedJob(migrator.OriginInfo, migrator.DestinationInfo, migrator.MatchConfidence);
+        try {
+            estimate(job, migrator);
+        } catch (RuntimeException ex) {
+            System.out.println("Error planning folder " + migrator.OriginInfo.Id + ": " + ex.getMessage());
+            job.PlanningError = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+        }
+        return job;
+    }
+
+    private static void estimate(PlannedJob job, BoxFileMigrator migrator) {
+        List<FolderSnapshot> subfolders = BoxApiService.getChildFolders(migrator.Origin);
+        job.SubfolderCount = subfolders.size();
+        job.EstimatedApiCalls = Math.max(1, (subfolders.size() + LISTING_PAGE_SIZE - 1) / LISTING_PAGE_SIZE);
+
+        if (migrator.Destination == null) {
+            return;
+        }
+
+        // Listing the destination here also warms the listing cache for the real run.
+        Map<String, BoxFolder> existingFolders = BoxApiService.getChildFoldersByName(migrator.Destination);
+        job.EstimatedApiCalls += Math.max(1, (existingFolders.size() + LISTING_PAGE_SIZE - 1) / LISTING_PAGE_SIZE);
+
+        for (FolderSnapshot subfolder : subfolders) {
+            if (!existingFolders.containsKey(subfolder.Name)) {
+                job.SubfoldersToCopy++;
+                job.TotalBytes += subfolder.Size;
+            }
+        }
+        job.EstimatedApiCalls += job.SubfoldersToCopy;
+    }
+
+    private static void writeJob(Future<PlannedJob> future, CSVWriter writer, PlanTotals totals) throws IOException {
+        PlannedJob job;
+        try {
+            job = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while planning the migration.", ex);
+        } catch (ExecutionException ex) {
+            // planJob() records its own errors, so this is something worse. A plan missing a job would quietly leave
+            // that folder unmigrated, so fail the whole plan instead.
+            throw new IOException("Unable to plan the migration: " + ex.getCause().getMessage(), ex.getCause());
+        }
+
+        writer.writeNext(new String[] {
+                job.OriginInfo.Id,
+                job.OriginInfo.Name,
+                job.DestinationInfo == null ? "" : job.DestinationInfo.Id,
+                job.DestinationInfo == null ? "" : job.DestinationInfo.Name,
+                // Locale.ROOT keeps the decimal point a "." so Double.parseDouble() can read it back in any locale.
+                String.format(Locale.ROOT, "%.2f", job.MatchConfidence),
+                String.valueOf(job.SubfolderCount),
+                String.valueOf(job.SubfoldersToCopy),
+                String.valueOf(job.TotalBytes),
+                String.valueOf(job.EstimatedApiCalls),
+                String.valueOf(job.getEstimatedMillis()),
+                job.PlanningError == null ? "" : job.PlanningError
+        });
+        totals.add(job);
+    }
+
+    /**
+     * @description Read a plan file back as migrators, largest job first. Jobs the journal marks as complete are left out.
+     */
+    public static List<BoxFileMigrator> readPlan(BoxAPIConnection api, File planFile, MigrationJournal journal) throws IOException {
+        List<PlannedJob> jobs = new ArrayList<PlannedJob>();
+
+        try (CSVReader reader = new CSVReader(new FileReader(planFile, StandardCharsets.UTF_8))) {
+            reader.readNext(); // Skip the column names.
+
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (row.length < PLAN_COLUMNS.length || (journal != null && journal.isOriginComplete(row[0]))) {
+                    continue;
+                }
+
+                FolderSnapshot destinationInfo = row[2].isBlank() ? null : new FolderSnapshot(row[2], row[3], 0);
+                PlannedJob job = new PlannedJob(new FolderSnapshot(row[0], row[1], 0), destinationInfo, Double.parseDouble(row[4]));
+                job.SubfolderCount = Integer.parseInt(row[5]);
+                job.SubfoldersToCopy = Integer.parseInt(row[6]);
+                job.TotalBytes = Long.parseLong(row[7]);
+                job.EstimatedApiCalls = Long.parseLong(row[8]);
+                if (!row[10].isBlank()) {
+                    job.PlanningError = row[10];
+                    System.out.println("Folder " + job.OriginInfo.Id + " could not be planned (" + job.PlanningError + "). Its size is unknown, so it is scheduled first.");
+                }
+                jobs.add(job);
+            }
+        } catch (CsvValidationException | NumberFormatException ex) {
+            throw new IOException("Unable to read the migration plan " + planFile.getPath() + ": " + ex.getMessage(), ex);
+        }
+
+        // Longest job first: with N workers the total time is then close to max(longest job, total / N). A job that
+        // couldn't be planned might be the longest, so those go ahead of everything.
+        jobs.sort((left, right) -> left.PlanningError == null && right.PlanningError == null
+                ? Long.compare(right.getEstimatedMillis(), left.getEstimatedMillis())
+                : Boolean.compare(left.PlanningError == null, right.PlanningError == null));
+
+        List<BoxFileMigrator> migrators = new ArrayList<BoxFileMigrator>(jobs.size());
+        for (PlannedJob job : jobs) {
+            BoxFileMigrator migrator = new BoxFileMigrator(api, job.OriginInfo, job.DestinationInfo);
+            migrator.MatchConfidence = job.MatchConfidence;
+            migrators.add(migrator);
+        }
+
+        System.out.println("Loaded " + migrators.size() + " jobs from migration plan " + planFile.getPath());
+        return migrators;
+    }
+
+    /**
+     * @description One pairing in the plan and its estimated cost.
+     */
+    public static class PlannedJob {
+
+        public PlannedJob(FolderSnapshot originInfo, FolderSnapshot destinationInfo, double matchConfidence) {
+            OriginInfo = originInfo;
+            DestinationInfo = destinationInfo;
+            MatchConfidence = matchConfidence;
+        }
+
+        public final FolderSnapshot OriginInfo;
+        public final FolderSnapshot DestinationInfo;
+        public final double MatchConfidence;
+        public int SubfolderCount;
+        public int SubfoldersToCopy;
+        public long TotalBytes;
+        public long EstimatedApiCalls;
+        // Why the job couldn't be estimated, or null if it was.
+        public String PlanningError;
+
+        public long getEstimatedMillis() {
+            return EstimatedApiCalls * ESTIMATED_MILLIS_PER_CALL + TotalBytes * 1000 / ESTIMATED_COPY_BYTES_PER_SECOND;
+        }
+    }
+
+    private static class PlanTotals {
+        int JobCount;
+        int UnmatchedCount;
+        int FailedCount;
+        long SubfoldersToCopy;
+        long TotalBytes;
+        long EstimatedApiCalls;
+        long EstimatedMillis;
+        long LongestJobMillis;
+
+        void add(PlannedJob job) {
+            JobCount++;
+            if (job.DestinationInfo == null) {
+                UnmatchedCount++;
+            }
+            if (job.PlanningError != null) {
+                FailedCount++;
+            }
+            SubfoldersToCopy += job.SubfoldersToCopy;
+            TotalBytes += job.TotalBytes;
+            EstimatedApiCalls += job.EstimatedApiCalls;
+            EstimatedMillis += job.getEstimatedMillis();
+            LongestJobMillis = Math.max(LongestJobMillis, job.getEstimatedMillis());
+        }
+
+        void print(int threadCount) {
+            // A run can't finish faster than its longest job, its work spread over every thread, or the API quota allows.
+            // Each app user in the connection pool has its own quota.
+            int identityCount = BoxApiService.getConnectionPool().getIdentities().size();
+            long rateLimitedMillis = (long)(EstimatedApiCalls * 1000 / (ApiRateLimiter.DEFAULT_MAX_CALLS_PER_SECOND * identityCount));
+            long estimatedWallMillis = Math.max(LongestJobMillis, Math.max(EstimatedMillis / threadCount, rateLimitedMillis));
+
+            System.out.println("Migration plan: " + JobCount + " folders (" + UnmatchedCount + " without a match, " + FailedCount + " not estimated), "
+                    + SubfoldersToCopy + " subfolders to copy, " + TotalBytes / (1024 * 1024) + " MB, "
+                    + EstimatedApiCalls + " API calls. Estimated duration with " + threadCount + " threads: "
+                    + estimatedWallMillis / 60000 + " minutes");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+import com.box.sdk.PartialCollection;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @description The discovery and matching stages of the migration. Pages through the directory of folders to migrate
+ *              and pairs each one with its destination folder by (possibly approximate) name, one page at a time, so the first copy can start
+ *              as soon as the first page arrives and only one page is ever held in memory.
+ */
+public class OriginFolderSource implements Iterable<BoxFileMigrator> {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final BoxAPIConnection api;
+    private final String migrateDirectoryId;
+    private final FolderNameMatcher<BoxFolder> destinationMatcher;
+    private final MigrationJournal journal;
+    private final int pageSize;
+
+    private ShardAssignment shard = ShardAssignment.ALL;
+    private volatile int skippedCount = 0;
+
+    public OriginFolderSource(BoxAPIConnection api, String migrateDirectoryId, FolderNameMatcher<BoxFolder> destinationMatcher, MigrationJournal journal) {
+        this(api, migrateDirectoryId, destinationMatcher, journal, DEFAULT_PAGE_SIZE);
+    }
+
+    public OriginFolderSource(BoxAPIConnection api, String migrateDirectoryId, FolderNameMatcher<BoxFolder> destinationMatcher, MigrationJournal journal, int pageSize) {
+        this.api = api;
+        this.migrateDirectoryId = migrateDirectoryId;
+        this.destinationMatcher = destinationMatcher;
+        this.journal = journal;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @description Only produce migrators for origin folders owned by the given shard.
+     */
+    public void setShard(ShardAssignment shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @description The number of origin folders skipped so far because the journal says they are already migrated.
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public Iterator<BoxFileMigrator> iterator() {
+        return new Iterator<BoxFileMigrator>() {
+            private final Deque<BoxFileMigrator> currentPage = new ArrayDeque<BoxFileMigrator>();
+            private long offset = 0;
+            private long excludedCount = 0;
+            private boolean isLastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                while (currentPage.isEmpty() && !isLastPage) {
+                    fetchNextPage();
+                }
+                return !currentPage.isEmpty();
+            }
+
+            @Override
+            public BoxFileMigrator next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return currentPage.removeFirst();
+            }
+
+            private void fetchNextPage() {
+                final long pageOffset = offset;
+                PartialCollection<BoxItem.Info> page = BoxApiService.call("listFolderPage",
+                        api -> new BoxFolder(api, migrateDirectoryId).getChildrenRange(pageOffset, pageSize, FolderSnapshot.FIELDS));
+
+                for (BoxItem.Info itemInfo : page) {
+                    if (!(itemInfo instanceof BoxFolder.Info) || !shard.owns(itemInfo.getID())) {
+                        excludedCount++;
+                        continue;
+                    }
+
+                    if (journal != null && journal.isOriginComplete(itemInfo.getID())) {
+                        skippedCount++;
+                        excludedCount++;
+                        continue;
+                    }
+
+                    // The snapshots come straight from the listing and the match, so the migrator never calls getInfo().
+                    FolderNameMatcher.Match<BoxFolder> match = destinationMatcher.match(itemInfo.getName());
+                    FolderSnapshot destinationInfo = match == null ? null : new FolderSnapshot(match.Value.getID(), match.MatchedName, 0);
+                    BoxFileMigrator migrator = new BoxFileMigrator(api, FolderSnapshot.of(itemInfo), destinationInfo);
+                    migrator.MatchConfidence = match == null ? 0 : match.Confidence;
+                    currentPage.addLast(migrator);
+                }
+
+                offset += page.size();
+                isLastPage = page.isEmpty() || offset >= page.fullSize();
+
+                // Everything not yet listed is assumed to need migrating, so the estimate tightens with each page.
+                MigrationMetrics.get().setExpectedFolders(page.fullSize() - excludedCount);
+            }
+        };
+    }
+}
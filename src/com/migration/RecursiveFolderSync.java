@@ -0,0 +1,209 @@
+package com.migration;
+
+import com.box.sdk.BoxFile;
+import com.box.sdk.BoxFolder;
+import com.box.sdk.BoxItem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @description Brings a destination folder up to date with an origin folder that was already (partly) migrated.
+ *              The two trees are walked side by side down to a maximum depth. Folders missing from the destination are
+ *              copied whole; folders that exist are descended into. Files are compared by SHA-1 (falling back to size
+ *              and modified time) and only missing or changed files are copied, so a re-sync moves just the delta.
+ *              A changed file is only replaced when the origin was modified after the destination copy, so edits made in
+ *              the destination after cutover are kept. It is replaced by uploading a new version, which keeps the
+ *              destination's version history and never leaves the file missing if the upload fails.
+ */
+public class RecursiveFolderSync {
+
+    private static final String[] SYNC_FIELDS = new String[] {"id", "name", "type", "size", "sha1", "modified_at"};
+    private static final int PAGE_SIZE = 1000;
+
+    private final int maxDepth;
+
+    /**
+     * @param maxDepth How many levels below the starting folders to descend. 0 only compares the files directly inside them.
+     */
+    public RecursiveFolderSync(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("The max depth can not be negative.");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public SyncResult sync(BoxFolder origin, BoxFolder destination) {
+        SyncResult result = new SyncResult();
+        syncFolder(origin, destination, 0, true, result);
+        return result;
+    }
+
+    /**
+     * @description Like sync(), but ignores the files directly inside the starting folders. A migration only copies the
+     *              subfolders of a paired origin folder, so this is the sync for a pair's top level.
+     */
+    public SyncResult syncSubfolders(BoxFolder origin, BoxFolder destination) {
+        SyncResult result = new SyncResult();
+        syncFolder(origin, destination, 0, false, result);
+        return result;
+    }
+
+    private void syncFolder(BoxFolder origin, BoxFolder destination, int depth, boolean isSyncingFiles, SyncResult result) {
+        // List both sides at the same time; neither listing depends on the other.
+        CompletableFuture<Map<String, BoxItem.Info>> destinationListing = CompletableFuture.supplyAsync(() -> getChildrenByName(destination));
+        Map<String, BoxItem.Info> originItemsByName = getChildrenByName(origin);
+        Map<String, BoxItem.Info> destinationItemsByName;
+        try {
+            destinationItemsByName = destinationListing.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException)ex.getCause() : ex;
+        }
+        // Set before each write rather than after, because a write that fails with a 5xx may still have happened.
+        boolean isDestinationChanged = false;
+
+        for (BoxItem.Info originItem : originItemsByName.values()) {
+            BoxItem.Info destinationItem = destinationItemsByName.get(originItem.getName());
+
+            try {
+                if (originItem instanceof BoxFolder.Info) {
+                    BoxFolder originFolder = new BoxFolder(origin.getAPI(), originItem.getID());
+
+                    if (destinationItem == null) {
+                        isDestinationChanged = true;
+                        BoxApiService.callOnce("copyFolder", api -> new BoxFolder(api, originFolder.getID()).copy(new BoxFolder(api, destination.getID())));
+                        result.FoldersCopied++;
+                    } else if (!(destinationItem instanceof BoxFolder.Info)) {
+                        result.Conflicts++;
+                    } else if (depth < maxDepth) {
+                        syncFolder(originFolder, new BoxFolder(destination.getAPI(), destinationItem.getID()), depth + 1, true, result);
+                    } else {
+                        result.FoldersBeyondMaxDepth++;
+                    }
+                } else if (originItem instanceof BoxFile.Info && isSyncingFiles) {
+                    BoxFile originFile = new BoxFile(origin.getAPI(), originItem.getID());
+
+                    if (destinationItem == null) {
+                        isDestinationChanged = true;
+                        BoxApiService.callOnce("copyFile", api -> new BoxFile(api, originFile.getID()).copy(new BoxFolder(api, destination.getID())));
+                        result.FilesCopied++;
+                    } else if (!(destinationItem instanceof BoxFile.Info)) {
+                        result.Conflicts++;
+                    } else if (isSameContent((BoxFile.Info)originItem, (BoxFile.Info)destinationItem)) {
+                        result.FilesUnchanged++;
+                    } else if (isOriginNewer(originItem, destinationItem)) {
+                        isDestinationChanged = true;
+                        uploadNewVersion((BoxFile.Info)originItem, destinationItem.getID());
+                        result.FilesReplaced++;
+                    } else {
+                        // The destination copy was edited after the origin, most likely after cutover. Keep it.
+                        result.FilesNewerInDestination++;
+                    }
+                }
+            } catch (Exception ex) {
+                result.Errors++;
+                result.LastError = originItem.getName() + ": " + ex.getMessage();
+            }
+        }
+
+        if (isDestinationChanged) {
+            BoxApiService.getListingCache().invalidate(destination.getID());
+        }
+    }
+
+    private static boolean isSameContent(BoxFile.Info originFile, BoxFile.Info destinationFile) {
+        if (originFile.getSha1() != null && destinationFile.getSha1() != null) {
+            return originFile.getSha1().equals(destinationFile.getSha1());
+        }
+
+        // Without hashes, a different size is certainly a change, and so is an origin modified since it was copied.
+        return originFile.getSize() == destinationFile.getSize() && !isOriginNewer(originFile, destinationFile);
+    }
+
+    /**
+     * @description A copy is stamped with the time it was made, so the origin only counts as newer if it was modified
+     *              after the destination copy. Without both times we can't tell, so the destination is left alone.
+     */
+    private static boolean isOriginNewer(BoxItem.Info originItem, BoxItem.Info destinationItem) {
+        return originItem.getModifiedAt() != null && destinationItem.getModifiedAt() != null
+                && originItem.getModifiedAt().after(destinationItem.getModifiedAt());
+    }
+
+    /**
+     * @description Replace the destination file's contents with the origin's as a new version. The origin is downloaded
+     *              to a temporary file first so a retried upload can send it again.
+     */
+    private static void uploadNewVersion(BoxFile.Info originFile, String destinationFileId) throws IOException {
+        File contents = File.createTempFile("box-sync", ".tmp");
+        try {
+            BoxApiService.call("downloadFile", api -> {
+                try (OutputStream out = new FileOutputStream(contents)) {
+                    new BoxFile(api, originFile.getID()).download(out);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return null;
+            });
+            // Box checks the upload against the origin's SHA-1, so a corrupt transfer fails instead of becoming a version.
+            BoxApiService.callOnce("uploadNewVersion", api -> {
+                try (InputStream in = new FileInputStream(contents)) {
+                    return new BoxFile(api, destinationFileId).uploadNewVersion(in, originFile.getSha1());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } finally {
+            if (!contents.delete()) {
+                contents.deleteOnExit();
+            }
+        }
+    }
+
+    private static Map<String, BoxItem.Info> getChildrenByName(BoxFolder folder) {
+        Map<String, BoxItem.Info> childrenByName = new HashMap<String, BoxItem.Info>();
+        BoxApiService.forEachChild(folder, PAGE_SIZE, SYNC_FIELDS, itemInfo -> childrenByName.put(itemInfo.getName(), itemInfo));
+        return childrenByName;
+    }
+
+    /**
+     * @description What a sync changed, used for the Details column of the CSV log.
+     */
+    public static class SyncResult {
+        public int FilesCopied;
+        public int FilesReplaced;
+        public int FilesUnchanged;
+        public int FilesNewerInDestination;
+        public int FoldersCopied;
+        public int FoldersBeyondMaxDepth;
+        public int Conflicts;
+        public int Errors;
+        public String LastError;
+
+        public boolean isUpToDate() {
+            return FilesCopied == 0 && FilesReplaced == 0 && FoldersCopied == 0 && Errors == 0;
+        }
+
+        @Override
+        public String toString() {
+            String summary = "Files copied: " + FilesCopied + ", Files replaced: " + FilesReplaced + ", Files unchanged: " + FilesUnchanged
+                    + ", Files newer in destination: " + FilesNewerInDestination
+                    + ", Folders copied: " + FoldersCopied + ", Folders beyond max depth: " + FoldersBeyondMaxDepth
+                    + ", Name conflicts: " + Conflicts + ", Errors: " + Errors;
+
+            if (Errors > 0) {
+                summary += " (last error: " + Objects.toString(LastError) + ")";
+            }
+            return summary;
+        }
+    }
+}
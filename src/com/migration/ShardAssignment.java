@@ -0,0 +1,95 @@
+package com.migration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @description Splits origin folders between N worker processes. Every worker builds the same consistent hash ring
+ *              from the shard count, so each folder id belongs to exactly one shard no matter which host asks, and
+ *              changing the shard count only moves about 1/N of the folders.
+ */
+public class ShardAssignment {
+
+    /**
+     * @description A single shard that owns every folder. Used when the migration isn't sharded.
+     */
+    public static final ShardAssignment ALL = new ShardAssignment(0, 1);
+
+    // Points per shard on the ring. More points spread folders more evenly between shards.
+    private static final int VIRTUAL_NODES_PER_SHARD = 128;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+    public ShardAssignment(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("The shard index must be between 0 and the shard count - 1.");
+        }
+
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; node++) {
+                ring.put(hash("shard-" + shard + "-" + node), shard);
+            }
+        }
+    }
+
+    /**
+     * @description Parse "i/N", e.g. "0/4" for the first of four shards.
+     */
+    public static ShardAssignment parse(String shard) {
+        String[] parts = shard.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("A shard must look like <index>/<count>, e.g. 0/4. Got: " + shard);
+        }
+        return new ShardAssignment(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    public boolean owns(String originFolderId) {
+        if (shardCount == 1) {
+            return true;
+        }
+
+        Map.Entry<Long, Integer> node = ring.ceilingEntry(hash(originFolderId));
+        if (node == null) {
+            node = ring.firstEntry();
+        }
+        return node.getValue() == shardIndex;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * @description A suffix for this shard's files (log, journal) so shards never write to the same file.
+     */
+    public String getFileSuffix() {
+        return isSharded() ? "-shard-" + shardIndex + "-of-" + shardCount : "";
+    }
+
+    @Override
+    public String toString() {
+        return shardIndex + "/" + shardCount;
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JVM is required to provide SHA-1.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.migration;
+
+import com.box.sdk.BoxAPIConnection;
+import com.opencsv.CSVReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryCrawlerTest {
+
+    private static final Pattern FOLDER_ITEMS = Pattern.compile("^/2\\.0/folders/(\\w+)/items/?$");
+    private static final Pattern FOLDER_INFO = Pattern.compile("^/2\\.0/folders/(\\w+)/?$");
+
+    // Root/
+    //   A/
+    //     A1/
+    //       a1.txt
+    //     a.txt
+    //   B/
+    //     b.txt
+    //   root.txt
+    private static final Map<String, String[][]> CHILDREN_BY_FOLDER_ID = new LinkedHashMap<String, String[][]>();
+    static {
+        CHILDREN_BY_FOLDER_ID.put("1", new String[][] {{"folder", "2", "A"}, {"folder", "3", "B"}, {"file", "10", "root.txt"}});
+        CHILDREN_BY_FOLDER_ID.put("2", new String[][] {{"folder", "4", "A1"}, {"file", "11", "a.txt"}});
+        CHILDREN_BY_FOLDER_ID.put("3", new String[][] {{"file", "12", "b.txt"}});
+        CHILDREN_BY_FOLDER_ID.put("4", new String[][] {{"file", "13", "a1.txt"}});
+    }
+
+    private static final List<String> ALL_PATHS = Arrays.asList(
+            "Root/A", "Root/A/A1", "Root/A/A1/a1.txt", "Root/A/a.txt", "Root/B", "Root/B/b.txt", "Root/root.txt");
+
+    @TempDir
+    File directory;
+
+    private HttpServer server;
+    // Folders the fake answers with a 403, as if listing them failed partway through a crawl.
+    private final Set<String> unavailableFolderIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/2.0/", this::handle);
+        server.start();
+
+        BoxAPIConnection api = new BoxAPIConnection("test-token");
+        api.setBaseURL("http://127.0.0.1:" + server.getAddress().getPort() + "/2.0/");
+        api.setMaxRetryAttempts(0);
+        BoxApiService.setAPI(api);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void crawlListsEveryItemOnce() throws Exception {
+        File outputFile = new File(directory, "inventory.csv");
+        File frontierFile = new File(directory, "inventory.frontier");
+
+        new InventoryCrawler(outputFile, frontierFile, InventoryCrawler.Format.CSV, InventoryCrawler.UNLIMITED_DEPTH, 2).crawl("1");
+
+        assertEquals(ALL_PATHS, readPaths(outputFile));
+        assertFalse(frontierFile.exists());
+    }
+
+    @Test
+    void resumedCrawlNeitherSkipsNorDuplicatesFolders() throws Exception {
+        File outputFile = new File(directory, "inventory.csv");
+        File frontierFile = new File(directory, "inventory.frontier");
+
+        // A1 and B fail, so they stay queued in the frontier log. Everything else is listed and done.
+        unavailableFolderIds.addAll(Arrays.asList("3", "4"));
+        new InventoryCrawler(outputFile, frontierFile, InventoryCrawler.Format.CSV, InventoryCrawler.UNLIMITED_DEPTH, 2).crawl("1");
+        assertTrue(frontierFile.exists());
+        assertEquals(Arrays.asList("Root/A", "Root/A/A1", "Root/A/a.txt", "Root/B", "Root/root.txt"), readPaths(outputFile));
+
+        // Then the process dies while committing another folder: its rows reached the output, but its frontier records
+        // were cut off before the done record.
+        append(outputFile, "\"Root/B/b.txt\",\"12\",\"file\",\"0\",\"\"\n");
+        append(frontierFile, "Q\u0000\u00013");
+
+        unavailableFolderIds.clear();
+        new InventoryCrawler(outputFile, frontierFile, InventoryCrawler.Format.CSV, InventoryCrawler.UNLIMITED_DEPTH, 2).crawl("1");
+
+        assertEquals(ALL_PATHS, readPaths(outputFile));
+        assertFalse(frontierFile.exists());
+    }
+
+    /**
+     * @return The path of every row after the header, sorted, checking the header is only written once.
+     */
+    private static List<String> readPaths(File outputFile) throws Exception {
+        List<String> paths = new ArrayList<String>();
+        try (CSVReader reader = new CSVReader(new FileReader(outputFile, StandardCharsets.UTF_8))) {
+            assertArrayEquals(InventoryCrawler.CSV_COLUMNS, reader.readNext());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                paths.add(row[0]);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static void append(File file, String text) throws IOException {
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Matcher matcher;
+        if ((matcher = FOLDER_ITEMS.matcher(path)).matches()) {
+            String folderId = matcher.group(1);
+            if (unavailableFolderIds.contains(folderId)) {
+                send(exchange, 403, "{\"type\":\"error\",\"status\":403,\"code\":\"access_denied_insufficient_permissions\"}");
+                return;
+            }
+
+            String[][] children = CHILDREN_BY_FOLDER_ID.get(folderId);
+            StringBuilder json = new StringBuilder("{\"total_count\":" + children.length + ",\"offset\":0,\"limit\":1000,\"entries\":[");
+            for (int i = 0; i < children.length; i++) {
+                json.append(i > 0 ? "," : "").append(toJson(children[i][0], children[i][1], children[i][2]));
+            }
+            send(exchange, 200, json.append("]}").toString());
+        } else if ((matcher = FOLDER_INFO.matcher(path)).matches() && matcher.group(1).equals("1")) {
+            send(exchange, 200, toJson("folder", "1", "Root"));
+        } else {
+            send(exchange, 404, "{\"type\":\"error\",\"status\":404,\"code\":\"not_found\"}");
+        }
+    }
+
+    private static String toJson(String type, String id, String name) {
+        return "{\"type\":\"" + type + "\",\"id\":\"" + id + "\",\"etag\":\"0\",\"name\":\"" + name + "\",\"size\":0}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
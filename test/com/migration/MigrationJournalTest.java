@@ -0,0 +1,64 @@
+package com.migration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MigrationJournalTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void recordsAreReplayedAfterReopening() throws IOException {
+        File journalFile = new File(directory, "journal.log");
+        try (MigrationJournal journal = new MigrationJournal(journalFile)) {
+            journal.markComplete("1", "10");
+            journal.markOriginComplete("1");
+        }
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile)) {
+            assertTrue(journal.isComplete("1", "10"));
+            assertTrue(journal.isOriginComplete("1"));
+            assertFalse(journal.isOriginComplete("10"));
+            assertEquals(2, journal.getCompletedCount());
+        }
+    }
+
+    @Test
+    void tornLastRecordIsTruncatedAndNotReplayed() throws IOException {
+        // The process died while appending "2,456": only a prefix, which reads as a different folder, reached the disk.
+        String completeRecords = "1,10\n1,*\n";
+        File journalFile = new File(directory, "journal.log");
+        Files.write(journalFile.toPath(), (completeRecords + "2,45").getBytes(StandardCharsets.UTF_8));
+
+        try (MigrationJournal journal = new MigrationJournal(journalFile)) {
+            assertTrue(journal.isComplete("1", "10"));
+            assertTrue(journal.isOriginComplete("1"));
+            assertFalse(journal.isComplete("2", "45"));
+            assertEquals(2, journal.getCompletedCount());
+            assertEquals(completeRecords, readJournal(journalFile));
+
+            journal.markComplete("2", "456");
+        }
+
+        // The next record starts on its own line instead of being glued onto the torn one.
+        assertEquals(completeRecords + "2,456\n", readJournal(journalFile));
+        try (MigrationJournal journal = new MigrationJournal(journalFile)) {
+            assertTrue(journal.isComplete("2", "456"));
+            assertFalse(journal.isComplete("2", "45"));
+        }
+    }
+
+    private static String readJournal(File journalFile) throws IOException {
+        return new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+    }
+}